@@ -17,10 +17,17 @@ import java.io.IOException;
  * Implements Global Game Settings Administrator
  * Serializable object allows to save an load 
  * settings from system drive
+ * Settings saved before a field existed load it as 0,
+ * getters of ia sizes map it to the default value
  * 
  * @author Cristian Tardivo
  */
 public class Settings implements Serializable {
+    // Serialized form version (saved settings files stay compatible)
+    private static final long serialVersionUID = 4501164305078984774L;
+    // IA sizes defaults (MB)
+    private static final int DEFAULT_HASH_SIZE = 16;
+    private static final int DEFAULT_ENDGAME_CACHE_SIZE = 32;
     // Settings Instance
     private static Settings instance;
     // Saved Settings filename
@@ -34,6 +41,9 @@ public class Settings implements Serializable {
     private Type player2Type = Type.local;
     // IA Settings
     private Difficult difficultLvl = Difficult.easy;
+    private int hashSize = DEFAULT_HASH_SIZE; // transposition table MB
+    private int searchThreads = 0; // 0: one for each processor
+    private int endgameCacheSize = DEFAULT_ENDGAME_CACHE_SIZE; // endgame database cache MB
     // Damas Frame (Window) Settings
     private int maximized = 0;  // 0: Normal 6: Maximized Both
     private Dimension size3D = new Dimension(900,560);
@@ -498,4 +508,67 @@ public class Settings implements Serializable {
     public static Difficult getDifficult(){
         return getInstance().difficultLvl;
     }
+    
+    /**
+     * Set ia transposition table size
+     * @param size size in MB [1..1024]
+     */
+    public static void setHashSize(int size){
+        if(size < 1 || size > 1024){
+            System.err.println("Invalid Hash Size");
+            return;
+        }
+        getInstance().hashSize = size;
+    }
+    
+    /**
+     * Retrieves ia transposition table size
+     * @return size in MB
+     */
+    public static int getHashSize(){
+        int size = getInstance().hashSize;
+        return (size > 0)? size : DEFAULT_HASH_SIZE;
+    }
+    
+    /**
+     * Set ia search threads
+     * @param threads number of threads [0..64], 0: one for each processor
+     */
+    public static void setSearchThreads(int threads){
+        if(threads < 0 || threads > 64){
+            System.err.println("Invalid Search Threads");
+            return;
+        }
+        getInstance().searchThreads = threads;
+    }
+    
+    /**
+     * Retrieves ia search threads
+     * @return number of threads (at least 1)
+     */
+    public static int getSearchThreads(){
+        int threads = getInstance().searchThreads;
+        return (threads > 0)? threads : Runtime.getRuntime().availableProcessors();
+    }
+    
+    /**
+     * Set ia endgame database cache size
+     * @param size size in MB [1..4096]
+     */
+    public static void setEndgameCacheSize(int size){
+        if(size < 1 || size > 4096){
+            System.err.println("Invalid Endgame Cache Size");
+            return;
+        }
+        getInstance().endgameCacheSize = size;
+    }
+    
+    /**
+     * Retrieves ia endgame database cache size
+     * @return size in MB
+     */
+    public static int getEndgameCacheSize(){
+        int size = getInstance().endgameCacheSize;
+        return (size > 0)? size : DEFAULT_ENDGAME_CACHE_SIZE;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+package checkers.ia;
+
+/**
+ * Class CancelToken
+ * Implements a cooperative search cancellation:
+ * the owner of a search resets the token before starting it and
+ * cancels it from any thread, search workers poll the token every
+ * few nodes and end returning their best move found so far
+ * Waits (like view pacing) can be cut short by cancellation too
+ * The owner can also set a search end time while the search runs
+ * (a search started without time limit, like pondering, gets one)
+ *
+ * @author Cristian Tardivo
+ */
+public final class CancelToken {
+    // Cancellation requested
+    private volatile boolean cancelled;
+    // Search end time (ms)
+    private volatile long deadline = Long.MAX_VALUE;
+
+    /**
+     * Prepare token for a new search
+     */
+    public void reset(){
+        cancelled = false;
+        deadline = Long.MAX_VALUE;
+    }
+
+    /**
+     * Set search end time, search ends at this time
+     * or at its own time budget end
+     * @param deadline search end time (ms)
+     */
+    public void setDeadline(long deadline){
+        this.deadline = deadline;
+    }
+
+    /**
+     * Get search end time
+     * @return search end time (ms), Long.MAX_VALUE if not set
+     */
+    public long getDeadline(){
+        return deadline;
+    }
+
+    /**
+     * Request cancellation, wakes up waiting threads
+     */
+    public synchronized void cancel(){
+        cancelled = true;
+        notifyAll();
+    }
+
+    /**
+     * Checks if cancellation was requested
+     * @return cancelled or not
+     */
+    public boolean isCancelled(){
+        return cancelled;
+    }
+
+    /**
+     * Wait until cancellation or time end
+     * @param time max time to wait (ms)
+     * @return cancelled or not
+     * @throws InterruptedException if waiting thread is interrupted
+     */
+    public synchronized boolean await(long time) throws InterruptedException {
+        long end = System.currentTimeMillis() + time;
+        long wait = time;
+        while(!cancelled && wait > 0){
+            wait(wait);
+            wait = end - System.currentTimeMillis();
+        }
+        return cancelled;
+    }
+}
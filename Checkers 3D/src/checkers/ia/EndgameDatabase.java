@@ -0,0 +1,460 @@
+package checkers.ia;
+
+import checkers.model.Model;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Class EndgameDatabase
+ * Implements endgame database probing (see EndgameIndex and
+ * tools.EndgameGenerator): one file for each material slice
+ * Values are stored in fixed size blocks compressed with deflate,
+ * files are memory mapped (not read) and blocks are decompressed when
+ * probed and kept in a LRU cache shared by all search threads, bounded
+ * by a RAM budget, so database size only costs the cache size of heap
+ * Cache is split in stripes with their own lock and LRU order, so
+ * search threads probing different blocks don't wait each other
+ * Only positions without a chained eat in progress are in database
+ * Database distances ignore the draw rule of turns without eats or
+ * men moves (see Model), so wins and losses that can't end before it
+ * aren't exact (see isExact)
+ *
+ * File format (big endian): magic, version (ints), rm, rq, bm, bq
+ * (bytes), slice size (long), values per block, blocks count (ints),
+ * blocks offsets from data start (longs, blocks count + 1) and
+ * compressed blocks; values with red to move are followed by values
+ * with black to move
+ *
+ * @author Cristian Tardivo
+ */
+public final class EndgameDatabase {
+    // Default database directory
+    public static final String DIRECTORY = "endgame";
+    // Probe result of positions not in database
+    public static final int UNKNOWN = -1;
+    // File format
+    private static final int MAGIC = 0x434B4547;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int BLOCK_VALUES = 4096;
+    // Max size of each data mapping (files can be bigger)
+    private static final long SEGMENT_SIZE = 1L << 30;
+    // Slices files
+    private final Map<Integer, SliceFile> slices;
+    private final int maxPieces;
+    // Decompressed blocks cache
+    private final BlockCache cache;
+    // Decompressor of each thread
+    private final ThreadLocal<Decompressor> decompressors = new ThreadLocal<Decompressor>(){
+        @Override
+        protected Decompressor initialValue(){
+            return new Decompressor();
+        }
+    };
+
+    /**
+     * Create a database over opened slices
+     * @param slices slices files
+     * @param cacheSize blocks cache size (bytes)
+     */
+    private EndgameDatabase(Map<Integer, SliceFile> slices, long cacheSize){
+        this.slices = slices;
+        int pieces = 0;
+        for(SliceFile slice : slices.values())
+            pieces = Math.max(pieces, slice.rm + slice.rq + slice.bm + slice.bq);
+        maxPieces = pieces;
+        cache = new BlockCache(capacity(cacheSize));
+    }
+
+    /**
+     * Open all slices files of a directory (files are mapped, not read)
+     * @param directory database directory
+     * @param cacheSize blocks cache size (bytes)
+     * @return endgame database
+     * @throws IOException if a file can't be mapped or isn't a valid slice
+     */
+    public static EndgameDatabase open(File directory, long cacheSize) throws IOException {
+        File[] files = directory.listFiles();
+        if(files == null)
+            throw new IOException("Can't read endgame directory " + directory);
+        Map<Integer, SliceFile> slices = new HashMap<>();
+        for(File file : files){
+            if(!file.getName().endsWith(".edb")) continue;
+            SliceFile slice = new SliceFile(file);
+            slices.put(EndgameIndex.slice(slice.rm, slice.rq, slice.bm, slice.bq), slice);
+        }
+        return new EndgameDatabase(slices, cacheSize);
+    }
+
+    /**
+     * Write a slice file
+     * @param file slice file
+     * @param rm red men
+     * @param rq red queens
+     * @param bm black men
+     * @param bq black queens
+     * @param values slice values [red to move, black to move]
+     * @throws IOException if file can't be written
+     */
+    public static void write(File file, int rm, int rq, int bm, int bq, byte[][] values) throws IOException {
+        long size = values[0].length;
+        int blocks = (int)((2 * size + BLOCK_VALUES - 1) / BLOCK_VALUES);
+        // Compress blocks
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        List<byte[]> data = new ArrayList<>(blocks);
+        byte[] input = new byte[BLOCK_VALUES];
+        byte[] output = new byte[2 * BLOCK_VALUES];
+        try {
+            for(int block = 0; block < blocks; block++){
+                int length = 0;
+                for(long i = (long)block * BLOCK_VALUES; i < 2 * size && length < BLOCK_VALUES; i++)
+                    input[length++] = values[(int)(i / size)][(int)(i % size)];
+                deflater.reset();
+                deflater.setInput(input, 0, length);
+                deflater.finish();
+                int compressed = 0;
+                while(!deflater.finished()){
+                    if(compressed == output.length)
+                        output = Arrays.copyOf(output, 2 * output.length);
+                    compressed += deflater.deflate(output, compressed, output.length - compressed);
+                }
+                data.add(Arrays.copyOf(output, compressed));
+            }
+        } finally {
+            deflater.end();
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeByte(rm);
+            out.writeByte(rq);
+            out.writeByte(bm);
+            out.writeByte(bq);
+            out.writeLong(size);
+            out.writeInt(BLOCK_VALUES);
+            out.writeInt(blocks);
+            long offset = 0;
+            for(byte[] block : data){
+                out.writeLong(offset);
+                offset += block.length;
+            }
+            out.writeLong(offset);
+            for(byte[] block : data)
+                out.write(block);
+        }
+    }
+
+    /**
+     * Get value of a position (see EndgameIndex)
+     * @param red red pieces bits
+     * @param black black pieces bits
+     * @param queens queens bits
+     * @param redTurn red player to move
+     * @return unsigned value or UNKNOWN if position isn't in database
+     */
+    public int probe(int red, int black, int queens, boolean redTurn){
+        if((redTurn? red : black) == 0) return EndgameIndex.loss(0) & 0xFF;
+        if((redTurn? black : red) == 0) return UNKNOWN;
+        int number = EndgameIndex.slice(red, black, queens);
+        SliceFile slice = slices.get(number);
+        if(slice == null || !EndgameIndex.isValid(red, black, queens)) return UNKNOWN;
+        long index = EndgameIndex.index(red, black, queens) + (redTurn? 0 : slice.size);
+        int block = (int)(index / slice.blockValues);
+        long key = ((long)number << 32) | block;
+        byte[] values = cache.get(key);
+        if(values == null){
+            values = decompressors.get().decompress(slice, block);
+            if(values == null) return UNKNOWN;
+            cache.put(key, values);
+        }
+        return values[(int)(index % slice.blockValues)] & 0xFF;
+    }
+
+    /**
+     * Get value of a position
+     * @param position position
+     * @return unsigned value or UNKNOWN if position isn't in database
+     */
+    public int probe(Position position){
+        if(position.getCheckSquare() >= 0) return UNKNOWN;
+        return probe(position.getRed(), position.getBlack(), position.getQueens(), position.isRedTurn());
+    }
+
+    /**
+     * Checks if a database value is the game result: draws, and wins
+     * and losses that end before Model.DRAW_TURNS turns without eats
+     * or men moves (else the game may be a draw)
+     * @param value unsigned database value (not UNKNOWN)
+     * @param reversibleTurns turns since last eat or man move
+     * @return exact or not
+     */
+    public static boolean isExact(int value, int reversibleTurns){
+        return value == EndgameIndex.DRAW
+               || reversibleTurns + EndgameIndex.distance((byte)value) < Model.DRAW_TURNS;
+    }
+
+    /**
+     * Get best move of a position: fastest win, draw or slowest loss
+     * @param position position (chained eat in progress allowed)
+     * @return packed move or Move.NONE if a move result isn't in database
+     * or position result isn't exact (see isExact)
+     */
+    public int bestMove(Position position){
+        int value = probe(position);
+        if(value != UNKNOWN && !isExact(value, position.getReversibleTurns()))
+            return Move.NONE;
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = position.generateMoves(moves, 0);
+        Position next = new Position();
+        int bestMove = Move.NONE;
+        int best = Integer.MIN_VALUE;
+        for(int i = 0; i < count; i++){
+            next.copy(position);
+            next.makeMove(moves[i]);
+            value = probe(next);
+            if(value == UNKNOWN) return Move.NONE;
+            // score for player to move: win in d turns 1000 - d, draw 0, loss in d turns d - 1000
+            int score = 0;
+            if(value != EndgameIndex.DRAW){
+                int distance = EndgameIndex.distance((byte)value) + 1;
+                score = EndgameIndex.isLoss((byte)value)? 1000 - distance : distance - 1000;
+            }
+            if(score > best){
+                best = score;
+                bestMove = moves[i];
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Checks if a material slice is in database
+     * @param rm red men
+     * @param rq red queens
+     * @param bm black men
+     * @param bq black queens
+     * @return found or not
+     */
+    public boolean contains(int rm, int rq, int bm, int bq){
+        return slices.containsKey(EndgameIndex.slice(rm, rq, bm, bq));
+    }
+
+    /**
+     * Get max pieces of database slices
+     * @return max pieces (0 empty database)
+     */
+    public int getMaxPieces(){
+        return maxPieces;
+    }
+
+    /**
+     * Change blocks cache size (extra blocks are removed on next use)
+     * @param cacheSize cache size (bytes)
+     */
+    public void setCacheSize(long cacheSize){
+        cache.setCapacity(capacity(cacheSize));
+    }
+
+    /**
+     * Get blocks cache hit rate
+     * @return hits / probes [0..1]
+     */
+    public double getCacheHitRate(){
+        return cache.getHitRate();
+    }
+
+    /**
+     * Get number of cached blocks of a cache size
+     * @param cacheSize cache size (bytes)
+     * @return blocks (at least one)
+     */
+    private static int capacity(long cacheSize){
+        return (int)Math.max(1, Math.min(Integer.MAX_VALUE, cacheSize / BLOCK_VALUES));
+    }
+
+    /**
+     * Mapped slice file
+     */
+    private static final class SliceFile {
+        final int rm, rq, bm, bq;
+        final long size;
+        final int blockValues;
+        final int blocks;
+        // Blocks offsets and data mappings (segments overlap a block size)
+        final MappedByteBuffer offsets;
+        final MappedByteBuffer[] segments;
+
+        SliceFile(File file) throws IOException {
+            try (RandomAccessFile input = new RandomAccessFile(file, "r");
+                 FileChannel channel = input.getChannel()){
+                // mappings remain valid after channel is closed
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), HEADER_SIZE));
+                if(header.capacity() < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+                    throw new IOException("Invalid endgame file " + file);
+                rm = header.get(8);
+                rq = header.get(9);
+                bm = header.get(10);
+                bq = header.get(11);
+                size = header.getLong(12);
+                blockValues = header.getInt(20);
+                if(size != EndgameIndex.size(rm, rq, bm, bq) || blockValues <= 0)
+                    throw new IOException("Invalid endgame file " + file);
+                long count = (2 * size + blockValues - 1) / blockValues;
+                ByteBuffer countBuffer = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, 4);
+                if(countBuffer.getInt(0) != count)
+                    throw new IOException("Invalid endgame file " + file);
+                blocks = (int)count;
+                long dataStart = HEADER_SIZE + 4 + 8L * (blocks + 1);
+                offsets = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + 4, 8L * (blocks + 1));
+                long dataSize = offsets.getLong(8 * blocks);
+                if(dataStart + dataSize != channel.size())
+                    throw new IOException("Invalid endgame file size " + file);
+                int maxBlock = 0;
+                for(int i = 0; i < blocks; i++)
+                    maxBlock = (int)Math.max(maxBlock, offsets.getLong(8 * (i + 1)) - offsets.getLong(8 * i));
+                segments = new MappedByteBuffer[(int)((dataSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+                for(int i = 0; i < segments.length; i++){
+                    long start = dataStart + i * SEGMENT_SIZE;
+                    long length = Math.min(SEGMENT_SIZE + maxBlock, channel.size() - start);
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                }
+            }
+        }
+    }
+
+    /**
+     * Block decompressor, one for each thread
+     */
+    private static final class Decompressor {
+        private final Inflater inflater = new Inflater();
+        private byte[] input = new byte[2 * BLOCK_VALUES];
+
+        /**
+         * Decompress a slice block
+         * @param slice slice file
+         * @param block block number
+         * @return block values or null if block is corrupt
+         */
+        byte[] decompress(SliceFile slice, int block){
+            long start = slice.offsets.getLong(8 * block);
+            int length = (int)(slice.offsets.getLong(8 * (block + 1)) - start);
+            if(input.length < length) input = new byte[length];
+            ByteBuffer data = slice.segments[(int)(start / SEGMENT_SIZE)].duplicate();
+            data.position((int)(start % SEGMENT_SIZE));
+            data.get(input, 0, length);
+            long first = (long)block * slice.blockValues;
+            byte[] values = new byte[(int)Math.min(slice.blockValues, 2 * slice.size - first)];
+            inflater.reset();
+            inflater.setInput(input, 0, length);
+            try {
+                int done = 0;
+                while(done < values.length && !inflater.finished())
+                    done += inflater.inflate(values, done, values.length - done);
+                return (done == values.length)? values : null;
+            } catch (DataFormatException ex){
+                System.err.println("EndgameDatabase: corrupt block " + ex.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Bounded cache of decompressed blocks, shared by all threads:
+     * blocks are spread by key over stripes, each one a LRU cache
+     * with its part of the capacity (approximate LRU of all blocks)
+     */
+    private static final class BlockCache {
+        // Number of stripes (2 ^ STRIPE_BITS)
+        private static final int STRIPE_BITS = 4;
+        private static final int STRIPES = 1 << STRIPE_BITS;
+        private final Stripe[] stripes = new Stripe[STRIPES];
+
+        BlockCache(int capacity){
+            for(int i = 0; i < STRIPES; i++)
+                stripes[i] = new Stripe();
+            setCapacity(capacity);
+        }
+
+        byte[] get(long key){
+            return stripe(key).get(key);
+        }
+
+        void put(long key, byte[] values){
+            stripe(key).put(key, values);
+        }
+
+        void setCapacity(int capacity){
+            // stripes capacities add up to capacity (at least one block each)
+            for(int i = 0; i < STRIPES; i++)
+                stripes[i].setCapacity(Math.max(1, (capacity + STRIPES - 1 - i) / STRIPES));
+        }
+
+        double getHitRate(){
+            long hits = 0, probes = 0;
+            for(Stripe stripe : stripes){
+                synchronized(stripe){
+                    hits += stripe.hits;
+                    probes += stripe.probes;
+                }
+            }
+            return (probes == 0)? 0 : (double)hits / probes;
+        }
+
+        /**
+         * Get stripe of a block (mixed key, consecutive blocks go
+         * to different stripes)
+         * @param key block key
+         * @return stripe
+         */
+        private Stripe stripe(long key){
+            return stripes[(int)((key * 0x9E3779B97F4A7C15L) >>> (64 - STRIPE_BITS))];
+        }
+    }
+
+    /**
+     * Bounded LRU cache of decompressed blocks, one stripe of BlockCache
+     */
+    private static final class Stripe {
+        private final LinkedHashMap<Long, byte[]> blocks = new LinkedHashMap<>(16, 0.75f, true);
+        private int capacity = 1;
+        private long hits;
+        private long probes;
+
+        synchronized byte[] get(long key){
+            probes++;
+            byte[] values = blocks.get(key);
+            if(values != null) hits++;
+            return values;
+        }
+
+        synchronized void put(long key, byte[] values){
+            blocks.put(key, values);
+            Iterator<byte[]> eldest = blocks.values().iterator();
+            while(blocks.size() > capacity){
+                eldest.next();
+                eldest.remove();
+            }
+        }
+
+        synchronized void setCapacity(int capacity){
+            this.capacity = capacity;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package checkers.ia;
+
+import checkers.model.Board;
+
+/**
+ * Class EndgameIndex
+ * Implements endgame database indexing and values
+ * Positions are grouped in slices by material (red men, red queens,
+ * black men, black queens), only positions without a chained eat in
+ * progress are indexed
+ * Index of a position in its slice is a perfect hash (no collisions):
+ * red men are ranked in their 28 squares (rows 1 to 7, row 0 men are
+ * queens), black men in their 28 squares (rows 0 to 6), red queens in
+ * squares without men and black queens in remaining squares
+ *   index = ((redMen * C(28, bm) + blackMen) * C(free, rq) + redQueens)
+ *           * C(free - rq, bq) + blackQueens
+ * Indexes with red and black men in the same square aren't positions
+ * Values are unsigned bytes for player to move: 0 draw, else turns to
+ * game end + 1 (chained eats are one turn), turns are odd in wins and
+ * even in losses (player to move makes the last move of a win)
+ *
+ * @author Cristian Tardivo
+ */
+public final class EndgameIndex {
+    // Men squares of each player
+    public static final int MEN_SQUARES = Board.SQUARES - 4;
+    // Values
+    public static final byte DRAW = 0;
+    public static final int MAX_DISTANCE = 254;
+    // Binomial coefficients [n][k]
+    private static final long[][] BINOMIAL = new long[Board.SQUARES + 1][Board.SQUARES + 1];
+    // Men squares masks: red men (rows 1 to 7), black men (rows 0 to 6)
+    private static final int RED_MEN = ~0xF;
+    private static final int BLACK_MEN = ~0xF0000000;
+
+    static {
+        for(int n = 0; n <= Board.SQUARES; n++){
+            BINOMIAL[n][0] = 1;
+            for(int k = 1; k <= n; k++)
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + ((k < n)? BINOMIAL[n - 1][k] : 0);
+        }
+    }
+
+    // No instances
+    private EndgameIndex(){}
+
+    /**
+     * Get slice number of a material (slices file names)
+     * @param rm red men
+     * @param rq red queens
+     * @param bm black men
+     * @param bq black queens
+     * @return slice number
+     */
+    public static int slice(int rm, int rq, int bm, int bq){
+        return ((rm * 10 + rq) * 10 + bm) * 10 + bq;
+    }
+
+    /**
+     * Get slice number of a position
+     * @param red red pieces bits
+     * @param black black pieces bits
+     * @param queens queens bits
+     * @return slice number
+     */
+    public static int slice(int red, int black, int queens){
+        return slice(Integer.bitCount(red & ~queens), Integer.bitCount(red & queens),
+                     Integer.bitCount(black & ~queens), Integer.bitCount(black & queens));
+    }
+
+    /**
+     * Get slice name (4 digits: rm rq bm bq)
+     * @param slice slice number
+     * @return slice name
+     */
+    public static String name(int slice){
+        return String.format("%04d", slice);
+    }
+
+    /**
+     * Get number of indexes of a slice (for each player to move)
+     * @param rm red men
+     * @param rq red queens
+     * @param bm black men
+     * @param bq black queens
+     * @return slice size
+     */
+    public static long size(int rm, int rq, int bm, int bq){
+        int free = Board.SQUARES - rm - bm;
+        if(rm > MEN_SQUARES || bm > MEN_SQUARES || rq + bq > free) return 0;
+        return BINOMIAL[MEN_SQUARES][rm] * BINOMIAL[MEN_SQUARES][bm]
+               * BINOMIAL[free][rq] * BINOMIAL[free - rq][bq];
+    }
+
+    /**
+     * Get index of a position in its slice
+     * @param red red pieces bits
+     * @param black black pieces bits
+     * @param queens queens bits
+     * @return position index
+     */
+    public static long index(int red, int black, int queens){
+        int redMen = red & ~queens, blackMen = black & ~queens;
+        int redQueens = red & queens, blackQueens = black & queens;
+        int rm = Integer.bitCount(redMen), bm = Integer.bitCount(blackMen);
+        int rq = Integer.bitCount(redQueens), bq = Integer.bitCount(blackQueens);
+        int free = Board.SQUARES - rm - bm;
+        int men = redMen | blackMen;
+        long index = rank(redMen >>> 4) * BINOMIAL[MEN_SQUARES][bm] + rank(blackMen);
+        index = index * BINOMIAL[free][rq] + rank(compress(redQueens, men));
+        return index * BINOMIAL[free - rq][bq] + rank(compress(blackQueens, men | redQueens));
+    }
+
+    /**
+     * Get position of an index
+     * @param index position index
+     * @param rm red men
+     * @param rq red queens
+     * @param bm black men
+     * @param bq black queens
+     * @param result position bits: red, black, queens
+     * @return valid position or not (men in the same square)
+     */
+    public static boolean position(long index, int rm, int rq, int bm, int bq, int[] result){
+        int free = Board.SQUARES - rm - bm;
+        long size = BINOMIAL[free - rq][bq];
+        int blackQueens = unrank(index % size, bq);
+        index /= size;
+        size = BINOMIAL[free][rq];
+        int redQueens = unrank(index % size, rq);
+        index /= size;
+        size = BINOMIAL[MEN_SQUARES][bm];
+        int blackMen = unrank(index % size, bm);
+        int redMen = unrank(index / size, rm) << 4;
+        if((redMen & blackMen) != 0) return false;
+        int men = redMen | blackMen;
+        redQueens = expand(redQueens, men);
+        blackQueens = expand(blackQueens, men | redQueens);
+        result[0] = redMen | redQueens;
+        result[1] = blackMen | blackQueens;
+        result[2] = redQueens | blackQueens;
+        return true;
+    }
+
+    /**
+     * Checks if a position can be indexed: men in its squares
+     * (red men out of row 0, black men out of row 7)
+     * @param red red pieces bits
+     * @param black black pieces bits
+     * @param queens queens bits
+     * @return valid or not
+     */
+    public static boolean isValid(int red, int black, int queens){
+        return ((red & ~queens) & ~RED_MEN) == 0 && ((black & ~queens) & ~BLACK_MEN) == 0;
+    }
+
+    /**
+     * Get win value
+     * @param distance turns to win, odd [1..MAX_DISTANCE]
+     * @return value
+     */
+    public static byte win(int distance){
+        return (byte)(distance + 1);
+    }
+
+    /**
+     * Get loss value
+     * @param distance turns to loss, even [0..MAX_DISTANCE]
+     * @return value
+     */
+    public static byte loss(int distance){
+        return (byte)(distance + 1);
+    }
+
+    /**
+     * Checks if value is a win
+     * @param value position value
+     * @return win or not
+     */
+    public static boolean isWin(byte value){
+        return (value & 1) == 0 && value != DRAW;
+    }
+
+    /**
+     * Checks if value is a loss
+     * @param value position value
+     * @return loss or not
+     */
+    public static boolean isLoss(byte value){
+        return (value & 1) != 0;
+    }
+
+    /**
+     * Get distance of a win or loss value
+     * @param value position value (not draw)
+     * @return turns to game end
+     */
+    public static int distance(byte value){
+        return (value & 0xFF) - 1;
+    }
+
+    /**
+     * Colex rank of a squares set
+     * @param bits squares bits
+     * @return rank
+     */
+    private static long rank(int bits){
+        long rank = 0;
+        for(int i = 1; bits != 0; i++, bits &= bits - 1)
+            rank += BINOMIAL[Integer.numberOfTrailingZeros(bits)][i];
+        return rank;
+    }
+
+    /**
+     * Squares set of a colex rank
+     * @param rank rank
+     * @param count number of squares
+     * @return squares bits
+     */
+    private static int unrank(long rank, int count){
+        int bits = 0;
+        int square = Board.SQUARES - 1;
+        for(int i = count; i > 0; i--){
+            while(BINOMIAL[square][i] > rank) square--;
+            rank -= BINOMIAL[square][i];
+            bits |= 1 << square;
+            square--;
+        }
+        return bits;
+    }
+
+    /**
+     * Remove used squares from a squares set numbering
+     * @param bits squares bits
+     * @param used used squares bits (not in bits)
+     * @return bits numbered over unused squares
+     */
+    private static int compress(int bits, int used){
+        int result = 0;
+        for(; bits != 0; bits &= bits - 1){
+            int square = Integer.numberOfTrailingZeros(bits);
+            result |= 1 << (square - Integer.bitCount(used & ((1 << square) - 1)));
+        }
+        return result;
+    }
+
+    /**
+     * Inverse of compress
+     * @param bits bits numbered over unused squares
+     * @param used used squares bits
+     * @return squares bits
+     */
+    private static int expand(int bits, int used){
+        int result = 0;
+        int free = ~used;
+        while(bits != 0){
+            int square = Integer.numberOfTrailingZeros(free);
+            free &= free - 1;
+            if((bits & 1) != 0) result |= 1 << square;
+            bits >>>= 1;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,105 @@
+package checkers.ia;
+
+import checkers.model.Board;
+
+/**
+ * Class Evaluation
+ * Implements search position evaluation weights:
+ * each piece is valued by its type (man or queen) plus a bonus for each
+ * row advanced from its side (queens too), red pieces are negative
+ * (Min player) and black pieces positive (Max player)
+ * Values of each piece in each square are precomputed, so positions
+ * can update their evaluation incrementally
+ * Default weights are the iaModel evaluation
+ *
+ * @author Cristian Tardivo
+ */
+public final class Evaluation {
+    // Default weights
+    public static final Evaluation DEFAULT = new Evaluation(60, 200, 10);
+    // Weights
+    private final int man;
+    private final int queen;
+    private final int row;
+    // Value of each piece in each square [red man, red queen, black man, black queen][square]
+    private final int[] values = new int[4 * Board.SQUARES];
+
+    /**
+     * Create new evaluation weights
+     * @param man man value
+     * @param queen queen value
+     * @param row value of each advanced row
+     */
+    public Evaluation(int man, int queen, int row){
+        this.man = man;
+        this.queen = queen;
+        this.row = row;
+        for(int sq = 0; sq < Board.SQUARES; sq++){
+            int r = Board.row(sq);
+            values[sq] = -(row * (8 - r)) - man;
+            values[Board.SQUARES + sq] = -(row * (8 - r)) - queen;
+            values[2 * Board.SQUARES + sq] = row * (r + 1) + man;
+            values[3 * Board.SQUARES + sq] = row * (r + 1) + queen;
+        }
+    }
+
+    /**
+     * Get evaluation of a piece in a square
+     * @param red red piece
+     * @param queen queen piece
+     * @param square board square
+     * @return piece value (red negative)
+     */
+    public int value(boolean red, boolean queen, int square){
+        return values[(red ? 0 : 2 * Board.SQUARES) + (queen ? Board.SQUARES : 0) + square];
+    }
+
+    /**
+     * Evaluate a position from scratch
+     * @param red red pieces bits
+     * @param black black pieces bits
+     * @param queens queens bits
+     * @return position value (black positive)
+     */
+    public int evaluate(int red, int black, int queens){
+        int value = 0;
+        for (int i = 0; i < 8; i++){
+            value -= Integer.bitCount(red & Board.rowMask(i)) * (row * (8 - i));
+            value += Integer.bitCount(black & Board.rowMask(i)) * (row * (i + 1));
+        }
+        value -= Integer.bitCount(red & ~queens) * man;
+        value -= Integer.bitCount(red & queens) * queen;
+        value += Integer.bitCount(black & ~queens) * man;
+        value += Integer.bitCount(black & queens) * queen;
+        return value;
+    }
+
+    /**
+     * Get man value
+     * @return value
+     */
+    public int getMan(){
+        return man;
+    }
+
+    /**
+     * Get queen value
+     * @return value
+     */
+    public int getQueen(){
+        return queen;
+    }
+
+    /**
+     * Get advanced row value
+     * @return value
+     */
+    public int getRow(){
+        return row;
+    }
+
+    @Override
+    public String toString(){
+        return "man=" + man + ",queen=" + queen + ",row=" + row;
+    }
+}
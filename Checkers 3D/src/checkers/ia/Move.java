@@ -0,0 +1,166 @@
+package checkers.ia;
+
+import checkers.model.Board;
+import checkers.common.Pair;
+import checkers.common.Point;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Class Move
+ * Implements packed int movements used by the search
+ * bits  0..4  origin square
+ * bits  5..9  destination square (end of the whole capture path)
+ * bits 10..27 captured squares (one bit for each inner square)
+ * bit  28     capture flag
+ * bit  29     promotion flag
+ * Squares are Board dark squares numbers [0..31]
+ * A capture move is a whole chained eat (all eats of the turn), eaten
+ * pieces are never in board edges, so inner squares (rows and columns
+ * 1 to 6) are enough to store them; capture path squares are found
+ * again from the position before the move (see MoveGenerator.path)
+ *
+ * @author Cristian Tardivo
+ */
+public final class Move {
+    // Empty move
+    public static final int NONE = 0;
+    // Flags
+    public static final int CAPTURE = 1 << 28;
+    public static final int PROMOTION = 1 << 29;
+    // Inner squares number of each square (-1 edge squares) and its squares
+    private static final int[] INNER = new int[Board.SQUARES];
+    private static final int[] INNER_SQUARES = new int[18];
+
+    static {
+        int count = 0;
+        for(int sq = 0; sq < Board.SQUARES; sq++){
+            int row = Board.row(sq), col = Board.col(sq);
+            boolean inner = row > 0 && row < 7 && col > 0 && col < 7;
+            INNER[sq] = inner ? count : -1;
+            if(inner) INNER_SQUARES[count++] = sq;
+        }
+    }
+
+    // No instances
+    private Move(){}
+
+    /**
+     * Create a simple move
+     * @param from origin square
+     * @param to destination square
+     * @return packed move
+     */
+    public static int create(int from, int to){
+        return from | (to << 5);
+    }
+
+    /**
+     * Create a capture move
+     * @param from origin square
+     * @param to destination square (end of capture path)
+     * @param captured captured pieces bits (inner squares)
+     * @return packed move
+     */
+    public static int capture(int from, int to, int captured){
+        int move = from | (to << 5) | CAPTURE;
+        for(; captured != 0; captured &= captured - 1)
+            move |= 1 << (10 + INNER[Integer.numberOfTrailingZeros(captured)]);
+        return move;
+    }
+
+    /**
+     * Get origin square
+     * @param move packed move
+     * @return square
+     */
+    public static int from(int move){
+        return move & 31;
+    }
+
+    /**
+     * Get destination square
+     * @param move packed move
+     * @return square
+     */
+    public static int to(int move){
+        return (move >>> 5) & 31;
+    }
+
+    /**
+     * Get captured pieces
+     * @param move packed move
+     * @return captured pieces bits (0 for simple moves)
+     */
+    public static int captured(int move){
+        int captured = 0;
+        for(int inner = (move >>> 10) & 0x3FFFF; inner != 0; inner &= inner - 1)
+            captured |= 1 << INNER_SQUARES[Integer.numberOfTrailingZeros(inner)];
+        return captured;
+    }
+
+    /**
+     * Get number of captured pieces
+     * @param move packed move
+     * @return captured pieces (0 for simple moves)
+     */
+    public static int captures(int move){
+        return Integer.bitCount((move >>> 10) & 0x3FFFF);
+    }
+
+    /**
+     * Checks if a move eats a rival piece
+     * @param move packed move
+     * @return true or false
+     */
+    public static boolean isCapture(int move){
+        return (move & CAPTURE) != 0;
+    }
+
+    /**
+     * Checks if a move makes a new queen
+     * @param move packed move
+     * @return true or false
+     */
+    public static boolean isPromotion(int move){
+        return (move & PROMOTION) != 0;
+    }
+
+    /**
+     * Convert packed move to game points
+     * (capture moves: origin and end of capture path)
+     * @param move packed move
+     * @return pair: origin, destiny
+     */
+    public static Pair<Point,Point> toPair(int move){
+        int from = from(move);
+        int to = to(move);
+        return new Pair<>(new Point(Board.row(from), Board.col(from)),
+                          new Point(Board.row(to), Board.col(to)));
+    }
+
+    /**
+     * Convert packed move to game points of each step
+     * @param position position before the move
+     * @param move legal packed move
+     * @return list of points: origin, each eat destiny (or destiny)
+     */
+    public static List<Point> toPath(Position position, int move){
+        int[] squares = new int[Board.SQUARES];
+        int count = position.getPath(move, squares);
+        List<Point> result = new LinkedList<>();
+        for(int i = 0; i < count; i++)
+            result.add(new Point(Board.row(squares[i]), Board.col(squares[i])));
+        return result;
+    }
+
+    /**
+     * Get move string label, like "(5, 0)-(4, 1)"
+     * @param move packed move
+     * @return string move
+     */
+    public static String toString(int move){
+        Pair<Point,Point> pair = toPair(move);
+        return pair.getFirst() + (isCapture(move) ? "x" : "-") + pair.getSecond();
+    }
+}
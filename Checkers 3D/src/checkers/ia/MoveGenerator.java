@@ -0,0 +1,387 @@
+package checkers.ia;
+
+import checkers.model.Board;
+
+/**
+ * Class MoveGenerator
+ * Implements allocation free move generation over board bitboards
+ * Moves are written as packed ints (see Move) into a buffer supplied
+ * by the caller, captures and quiet moves are separated phases
+ * Search moves are whole turns: each capture move is a complete
+ * chained eat path (until the piece can't eat again or becomes queen),
+ * paths with the same origin, end and eaten pieces are one move
+ * Game steps (one eat of a chained eat) are generated for game rules
+ *
+ * Follows game Logic rules:
+ * captures are obligatory, a chained eat must continue with the
+ * same piece (check square), men only move and eat forward,
+ * queens move and eat in any diagonal direction
+ *
+ * @author Cristian Tardivo
+ */
+public final class MoveGenerator {
+    // Max number of moves in any position (12 pieces, 4 directions,
+    // branching capture paths)
+    public static final int MAX_MOVES = 64;
+    // Directions: up-left, up-right, down-left, down-right
+    public static final int UP_LEFT = 0;
+    public static final int UP_RIGHT = 1;
+    public static final int DOWN_LEFT = 2;
+    public static final int DOWN_RIGHT = 3;
+    // Neighbour square in each direction (-1 out of board)
+    private static final int[][] STEP = new int[4][Board.SQUARES];
+    // Jump square (two steps) in each direction (-1 out of board)
+    private static final int[][] JUMP = new int[4][Board.SQUARES];
+    // Last rows (promotion rows)
+    private static final int RED_LAST_ROW = Board.rowMask(0);
+    private static final int BLACK_LAST_ROW = Board.rowMask(7);
+
+    static {
+        int[] dRow = {-1, -1, +1, +1};
+        int[] dCol = {-1, +1, -1, +1};
+        for(int sq = 0; sq < Board.SQUARES; sq++){
+            int row = Board.row(sq);
+            int col = Board.col(sq);
+            for(int dir = 0; dir < 4; dir++){
+                STEP[dir][sq] = Board.toSquare(row + dRow[dir], col + dCol[dir]);
+                JUMP[dir][sq] = Board.toSquare(row + 2 * dRow[dir], col + 2 * dCol[dir]);
+            }
+        }
+    }
+
+    // No instances
+    private MoveGenerator(){}
+
+    /**
+     * Generates capture moves for the side to move: all complete
+     * chained eat paths (eaten pieces are removed at each eat)
+     * @param own side to move pieces bits
+     * @param rival rival pieces bits
+     * @param queens queens bits (any color)
+     * @param red true if side to move is red
+     * @param checkSquare square of piece that must continue eating or -1
+     * @param moves buffer to write moves
+     * @param offset first buffer position to write
+     * @return number of moves written
+     */
+    public static int generateCaptures(int own, int rival, int queens, boolean red,
+                                       int checkSquare, int[] moves, int offset){
+        int lastRow = red ? RED_LAST_ROW : BLACK_LAST_ROW;
+        int count = offset;
+        int pieces = (checkSquare >= 0) ? own & (1 << checkSquare) : own;
+        for(; pieces != 0; pieces &= pieces - 1){
+            int from = Integer.numberOfTrailingZeros(pieces);
+            boolean queen = (queens & (1 << from)) != 0;
+            int empty = ~((own & ~(1 << from)) | rival);
+            count = capturePaths(from, from, rival, empty, 0, queen, red, lastRow, moves, offset, count);
+        }
+        return count - offset;
+    }
+
+    /**
+     * Follow capture paths of a piece from a path square
+     * @param from path origin square
+     * @param square current path square
+     * @param rival rival pieces bits (not eaten)
+     * @param empty empty squares bits (origin is empty)
+     * @param captured eaten pieces bits
+     * @param queen piece is queen
+     * @param red piece is red
+     * @param lastRow piece promotion row bits
+     * @param moves buffer to write moves
+     * @param offset first move of buffer segment
+     * @param count next buffer position to write
+     * @return next buffer position to write
+     */
+    private static int capturePaths(int from, int square, int rival, int empty, int captured, boolean queen,
+                                    boolean red, int lastRow, int[] moves, int offset, int count){
+        boolean ends = true;
+        // new queens can't continue eating
+        if(queen || captured == 0 || (lastRow & (1 << square)) == 0){
+            int dir = queen ? UP_LEFT : (red ? UP_LEFT : DOWN_LEFT);
+            int last = queen ? DOWN_RIGHT : dir + 1;
+            for(; dir <= last; dir++){
+                int over = STEP[dir][square];
+                int to = JUMP[dir][square];
+                if(to >= 0 && (rival & (1 << over)) != 0 && (empty & (1 << to)) != 0){
+                    ends = false;
+                    // piece leaves its square, eaten piece is removed
+                    int next = (empty | (1 << square) | (1 << over)) & ~(1 << to);
+                    count = capturePaths(from, to, rival & ~(1 << over), next, captured | (1 << over),
+                                         queen, red, lastRow, moves, offset, count);
+                }
+            }
+        }
+        if(ends && captured != 0){
+            int move = Move.capture(from, square, captured);
+            if(!queen && (lastRow & (1 << square)) != 0) move |= Move.PROMOTION;
+            // same origin, end and eaten pieces: same move
+            for(int i = offset; i < count; i++){
+                if(moves[i] == move) return count;
+            }
+            moves[count++] = move;
+        }
+        return count;
+    }
+
+    /**
+     * Generates single eat steps for the side to move
+     * (first eat of each chained eat path, game steps)
+     * @param own side to move pieces bits
+     * @param rival rival pieces bits
+     * @param queens queens bits (any color)
+     * @param red true if side to move is red
+     * @param checkSquare square of piece that must continue eating or -1
+     * @param moves buffer to write moves
+     * @param offset first buffer position to write
+     * @return number of moves written
+     */
+    public static int generateJumps(int own, int rival, int queens, boolean red,
+                                    int checkSquare, int[] moves, int offset){
+        int empty = ~(own | rival);
+        int lastRow = red ? RED_LAST_ROW : BLACK_LAST_ROW;
+        int first = red ? UP_LEFT : DOWN_LEFT;
+        int count = offset;
+        int pieces = (checkSquare >= 0) ? own & (1 << checkSquare) : own;
+        for(; pieces != 0; pieces &= pieces - 1){
+            int from = Integer.numberOfTrailingZeros(pieces);
+            boolean queen = (queens & (1 << from)) != 0;
+            int dir = queen ? UP_LEFT : first;
+            int last = queen ? DOWN_RIGHT : first + 1;
+            for(; dir <= last; dir++){
+                int over = STEP[dir][from];
+                int to = JUMP[dir][from];
+                if(to >= 0 && (rival & (1 << over)) != 0 && (empty & (1 << to)) != 0){
+                    int move = Move.capture(from, to, 1 << over);
+                    if(!queen && (lastRow & (1 << to)) != 0) move |= Move.PROMOTION;
+                    moves[count++] = move;
+                }
+            }
+        }
+        return count - offset;
+    }
+
+    /**
+     * Generates non capture moves for the side to move
+     * don't checks for obligatory eats
+     * @param own side to move pieces bits
+     * @param rival rival pieces bits
+     * @param queens queens bits (any color)
+     * @param red true if side to move is red
+     * @param moves buffer to write moves
+     * @param offset first buffer position to write
+     * @return number of moves written
+     */
+    public static int generateQuiet(int own, int rival, int queens, boolean red,
+                                    int[] moves, int offset){
+        int empty = ~(own | rival);
+        int lastRow = red ? RED_LAST_ROW : BLACK_LAST_ROW;
+        int first = red ? UP_LEFT : DOWN_LEFT;
+        int count = offset;
+        for(int pieces = own; pieces != 0; pieces &= pieces - 1){
+            int from = Integer.numberOfTrailingZeros(pieces);
+            boolean queen = (queens & (1 << from)) != 0;
+            int dir = queen ? UP_LEFT : first;
+            int last = queen ? DOWN_RIGHT : first + 1;
+            for(; dir <= last; dir++){
+                int to = STEP[dir][from];
+                if(to >= 0 && (empty & (1 << to)) != 0){
+                    int move = Move.create(from, to);
+                    if(!queen && (lastRow & (1 << to)) != 0) move |= Move.PROMOTION;
+                    moves[count++] = move;
+                }
+            }
+        }
+        return count - offset;
+    }
+
+    /**
+     * Generates all legal moves for the side to move
+     * capture paths if there are any (obligatory eats), else quiet moves
+     * @param own side to move pieces bits
+     * @param rival rival pieces bits
+     * @param queens queens bits (any color)
+     * @param red true if side to move is red
+     * @param checkSquare square of piece that must continue eating or -1
+     * @param moves buffer to write moves
+     * @param offset first buffer position to write
+     * @return number of moves written
+     */
+    public static int generateMoves(int own, int rival, int queens, boolean red,
+                                    int checkSquare, int[] moves, int offset){
+        int count = generateCaptures(own, rival, queens, red, checkSquare, moves, offset);
+        if(count > 0 || checkSquare >= 0) return count;
+        return generateQuiet(own, rival, queens, red, moves, offset);
+    }
+
+    /**
+     * Generates all legal game steps for the side to move
+     * single eats if there are any (obligatory eats), else quiet moves
+     * @param own side to move pieces bits
+     * @param rival rival pieces bits
+     * @param queens queens bits (any color)
+     * @param red true if side to move is red
+     * @param checkSquare square of piece that must continue eating or -1
+     * @param moves buffer to write moves
+     * @param offset first buffer position to write
+     * @return number of moves written
+     */
+    public static int generateSteps(int own, int rival, int queens, boolean red,
+                                    int checkSquare, int[] moves, int offset){
+        int count = generateJumps(own, rival, queens, red, checkSquare, moves, offset);
+        if(count > 0 || checkSquare >= 0) return count;
+        return generateQuiet(own, rival, queens, red, moves, offset);
+    }
+
+    /**
+     * Get squares of a move path (origin, each eat destination)
+     * @param own side to move pieces bits
+     * @param rival rival pieces bits
+     * @param queens queens bits (any color)
+     * @param red true if side to move is red
+     * @param move legal packed move
+     * @param squares result squares (Board.SQUARES)
+     * @return number of squares (0 if move isn't a legal path)
+     */
+    public static int path(int own, int rival, int queens, boolean red, int move, int[] squares){
+        int from = Move.from(move);
+        squares[0] = from;
+        if(!Move.isCapture(move)){
+            squares[1] = Move.to(move);
+            return 2;
+        }
+        boolean queen = (queens & (1 << from)) != 0;
+        int empty = ~((own & ~(1 << from)) | rival);
+        return findPath(from, Move.to(move), Move.captured(move), empty, queen, red, squares, 1);
+    }
+
+    /**
+     * Find a capture path eating all pieces of a set
+     * @param square current path square
+     * @param to path end square
+     * @param left pieces to eat bits
+     * @param empty empty squares bits
+     * @param queen piece is queen
+     * @param red piece is red
+     * @param squares path squares
+     * @param length path squares before current eat
+     * @return path length or 0 if not found
+     */
+    private static int findPath(int square, int to, int left, int empty, boolean queen, boolean red,
+                                int[] squares, int length){
+        if(left == 0) return (square == to) ? length : 0;
+        int dir = queen ? UP_LEFT : (red ? UP_LEFT : DOWN_LEFT);
+        int last = queen ? DOWN_RIGHT : dir + 1;
+        for(; dir <= last; dir++){
+            int over = STEP[dir][square];
+            int next = JUMP[dir][square];
+            if(next >= 0 && (left & (1 << over)) != 0 && (empty & (1 << next)) != 0){
+                squares[length] = next;
+                int nextEmpty = (empty | (1 << square) | (1 << over)) & ~(1 << next);
+                int result = findPath(next, to, left & ~(1 << over), nextEmpty, queen, red, squares, length + 1);
+                if(result > 0) return result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Checks if side to move has obligatory eats
+     * @param own side to move pieces bits
+     * @param rival rival pieces bits
+     * @param queens queens bits (any color)
+     * @param red true if side to move is red
+     * @return has or hasn't captures
+     */
+    public static boolean hasCaptures(int own, int rival, int queens, boolean red){
+        int empty = ~(own | rival);
+        int first = red ? UP_LEFT : DOWN_LEFT;
+        for(int pieces = own; pieces != 0; pieces &= pieces - 1){
+            int from = Integer.numberOfTrailingZeros(pieces);
+            boolean queen = (queens & (1 << from)) != 0;
+            int dir = queen ? UP_LEFT : first;
+            int last = queen ? DOWN_RIGHT : first + 1;
+            for(; dir <= last; dir++){
+                int to = JUMP[dir][from];
+                if(to >= 0 && (rival & (1 << STEP[dir][from])) != 0 && (empty & (1 << to)) != 0)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a game step (quiet move or single eat) is legal for
+     * the side to move, same steps of generateSteps without a buffer
+     * @param own side to move pieces bits
+     * @param rival rival pieces bits
+     * @param queens queens bits (any color)
+     * @param red true if side to move is red
+     * @param checkSquare square of piece that must continue eating or -1
+     * @param from origin square
+     * @param to destination square
+     * @return legal or not
+     */
+    public static boolean isLegalStep(int own, int rival, int queens, boolean red,
+                                      int checkSquare, int from, int to){
+        if((own & (1 << from)) == 0 || ((own | rival) & (1 << to)) != 0) return false;
+        if(checkSquare >= 0 && from != checkSquare) return false;
+        // eats are obligatory
+        boolean eat = checkSquare >= 0 || hasCaptures(own, rival, queens, red);
+        boolean queen = (queens & (1 << from)) != 0;
+        int dir = queen ? UP_LEFT : (red ? UP_LEFT : DOWN_LEFT);
+        int last = queen ? DOWN_RIGHT : dir + 1;
+        for(; dir <= last; dir++){
+            if(eat ? JUMP[dir][from] == to && (rival & (1 << STEP[dir][from])) != 0
+                   : STEP[dir][from] == to)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a piece can eat a rival piece from its square
+     * @param own piece owner pieces bits
+     * @param rival rival pieces bits
+     * @param queens queens bits (any color)
+     * @param red true if piece is red
+     * @param square piece square
+     * @return can or can't eat
+     */
+    public static boolean canCapture(int own, int rival, int queens, boolean red, int square){
+        int empty = ~(own | rival);
+        boolean queen = (queens & (1 << square)) != 0;
+        int dir = queen ? UP_LEFT : (red ? UP_LEFT : DOWN_LEFT);
+        int last = queen ? DOWN_RIGHT : dir + 1;
+        for(; dir <= last; dir++){
+            int to = JUMP[dir][square];
+            if(to >= 0 && (rival & (1 << STEP[dir][square])) != 0 && (empty & (1 << to)) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if side to move has any legal move
+     * @param own side to move pieces bits
+     * @param rival rival pieces bits
+     * @param queens queens bits (any color)
+     * @param red true if side to move is red
+     * @return has or hasn't movements
+     */
+    public static boolean hasMoves(int own, int rival, int queens, boolean red){
+        int empty = ~(own | rival);
+        int first = red ? UP_LEFT : DOWN_LEFT;
+        for(int pieces = own; pieces != 0; pieces &= pieces - 1){
+            int from = Integer.numberOfTrailingZeros(pieces);
+            boolean queen = (queens & (1 << from)) != 0;
+            int dir = queen ? UP_LEFT : first;
+            int last = queen ? DOWN_RIGHT : first + 1;
+            for(; dir <= last; dir++){
+                int to = STEP[dir][from];
+                if(to >= 0 && (empty & (1 << to)) != 0) return true;
+            }
+        }
+        return hasCaptures(own, rival, queens, red);
+    }
+}
@@ -0,0 +1,167 @@
+package checkers.ia;
+
+import checkers.model.Board;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Class MoveOrdering
+ * Implements search moves ordering to get early alpha-beta cut-offs
+ * moves are tried in order: transposition table move, captures
+ * (longest chained eats, queen captures and promotions first), killer
+ * moves of the ply
+ * and then by history heuristic value
+ * A small seeded random value is added at root moves only,
+ * to play different games between equal valued moves
+ * (or at every ply for helper search threads, to search other moves),
+ * it's kept below order values, so it only reorders equal moves
+ *
+ * @author Cristian Tardivo
+ */
+public final class MoveOrdering {
+    // Order scores (before random value bits)
+    private static final int HASH_SCORE = 1 << 26;
+    private static final int CAPTURE_SCORE = 1 << 25;
+    private static final int KILLER_SCORE = 1 << 24;
+    private static final int HISTORY_MAX = 1 << 20;
+    // Random value bits (lowest bits of moves scores)
+    private static final int NOISE_BITS = 4;
+    // Killer moves, two for each ply
+    private final int[] killers = new int[Position.MAX_PLY * 2];
+    // History values [side][from][to]
+    private final int[] history = new int[2 * Board.SQUARES * Board.SQUARES];
+    // Moves scores (parallel to moves buffer)
+    private final int[] scores;
+    // Root random
+    private final Random random;
+    // Random value at every ply
+    private boolean noisy;
+
+    /**
+     * Create a new move ordering
+     * @param bufferSize size of search moves buffer
+     */
+    public MoveOrdering(int bufferSize){
+        scores = new int[bufferSize];
+        random = new Random();
+    }
+
+    /**
+     * Set root random seed
+     * @param seed random seed
+     */
+    public void setSeed(long seed){
+        random.setSeed(seed);
+    }
+
+    /**
+     * Set random value at every ply or only at root
+     * @param everyPly true for every ply
+     */
+    public void setNoisy(boolean everyPly){
+        noisy = everyPly;
+    }
+
+    /**
+     * Prepare for a new search
+     * clears killers and ages history values
+     */
+    public void newSearch(){
+        Arrays.fill(killers, Move.NONE);
+        for(int i = 0; i < history.length; i++)
+            history[i] >>= 1;
+    }
+
+    /**
+     * Clear all ordering information (new game)
+     */
+    public void clear(){
+        Arrays.fill(killers, Move.NONE);
+        Arrays.fill(history, 0);
+    }
+
+    /**
+     * Score moves of a ply buffer segment
+     * @param moves moves buffer
+     * @param offset first move
+     * @param count number of moves
+     * @param hashMove transposition table move or Move.NONE
+     * @param queens position queens bits
+     * @param red red player moves
+     * @param ply search ply
+     */
+    public void score(int[] moves, int offset, int count, int hashMove, int queens, boolean red, int ply){
+        int killer1 = killers[ply << 1];
+        int killer2 = killers[(ply << 1) + 1];
+        int side = red ? 0 : Board.SQUARES * Board.SQUARES;
+        for(int i = offset; i < offset + count; i++){
+            int move = moves[i];
+            int score;
+            if(move == hashMove){
+                score = HASH_SCORE;
+            } else if(Move.isCapture(move)){
+                int captured = Move.captured(move);
+                score = CAPTURE_SCORE + (Integer.bitCount(captured) << 5) + (Integer.bitCount(captured & queens) << 1);
+                if(Move.isPromotion(move)) score += 1;
+            } else if(move == killer1){
+                score = KILLER_SCORE + 1;
+            } else if(move == killer2){
+                score = KILLER_SCORE;
+            } else {
+                score = history[side + (Move.from(move) << 5) + Move.to(move)];
+            }
+            score <<= NOISE_BITS;
+            if((ply == 0 || noisy) && move != hashMove)
+                score += random.nextInt(1 << NOISE_BITS);
+            scores[i] = score;
+        }
+    }
+
+    /**
+     * Select next move to search, moves best scored move
+     * of remaining moves to index position
+     * @param moves moves buffer
+     * @param index next move position
+     * @param end end of ply buffer segment (exclusive)
+     * @return move to search
+     */
+    public int next(int[] moves, int index, int end){
+        int best = index;
+        for(int i = index + 1; i < end; i++){
+            if(scores[i] > scores[best]) best = i;
+        }
+        if(best != index){
+            int move = moves[best];
+            int score = scores[best];
+            moves[best] = moves[index];
+            scores[best] = scores[index];
+            moves[index] = move;
+            scores[index] = score;
+        }
+        return moves[index];
+    }
+
+    /**
+     * Update killers and history with a move that caused a cut-off
+     * captures are already searched first and are not saved
+     * @param move cut-off move
+     * @param red red player moves
+     * @param ply search ply
+     * @param depth remaining depth
+     */
+    public void update(int move, boolean red, int ply, int depth){
+        if(Move.isCapture(move)) return;
+        // Killers
+        if(killers[ply << 1] != move){
+            killers[(ply << 1) + 1] = killers[ply << 1];
+            killers[ply << 1] = move;
+        }
+        // History
+        int index = (red ? 0 : Board.SQUARES * Board.SQUARES) + (Move.from(move) << 5) + Move.to(move);
+        history[index] += depth * depth;
+        if(history[index] > HISTORY_MAX){
+            for(int i = 0; i < history.length; i++)
+                history[i] >>= 1;
+        }
+    }
+}
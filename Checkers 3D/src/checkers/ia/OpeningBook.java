@@ -0,0 +1,213 @@
+package checkers.ia;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Class OpeningBook
+ * Implements a read only opening book mapped from a binary file:
+ * entries (position key, move, weight) sorted by key and by weight,
+ * a position can have many entries (one for each book move)
+ * Book is probed with a binary search over the mapped file, so book
+ * size doesn't use Java heap
+ * Book move is chosen at random, proportional to its weight
+ *
+ * File format (big endian):
+ *   header: magic, version, entries count, book plies (ints)
+ *   entries: key (long), packed move (int), weight (int)
+ *
+ * @author Cristian Tardivo
+ */
+public final class OpeningBook {
+    // Default book file
+    public static final String FILE_NAME = "book.bin";
+    // Max moves of a position
+    public static final int MAX_MOVES = MoveGenerator.MAX_MOVES;
+    // File format
+    private static final int MAGIC = 0x434B424B;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 16;
+    // Mapped book entries
+    private final MappedByteBuffer buffer;
+    private final int entries;
+    private final int plies;
+
+    /**
+     * Create a book over mapped file data
+     * @param buffer mapped file
+     * @throws IOException if file isn't a valid book
+     */
+    private OpeningBook(MappedByteBuffer buffer) throws IOException {
+        if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new IOException("Invalid opening book");
+        this.buffer = buffer;
+        entries = buffer.getInt(8);
+        plies = buffer.getInt(12);
+        if(entries < 0 || buffer.capacity() != HEADER_SIZE + (long)entries * ENTRY_SIZE)
+            throw new IOException("Invalid opening book size");
+    }
+
+    /**
+     * Open a book file (file is mapped, not read)
+     * @param file book file
+     * @return opening book
+     * @throws IOException if file can't be mapped or isn't a valid book
+     */
+    public static OpeningBook open(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()){
+            // mapping remains valid after channel is closed
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Write a book file
+     * @param file book file
+     * @param plies book plies from initial position
+     * @param list book entries (sorted here)
+     * @throws IOException if file can't be written
+     */
+    public static void write(File file, int plies, List<Entry> list) throws IOException {
+        Collections.sort(list);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))){
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(list.size());
+            output.writeInt(plies);
+            for(Entry entry : list){
+                output.writeLong(entry.key);
+                output.writeInt(entry.move);
+                output.writeInt(entry.weight);
+            }
+        }
+    }
+
+    /**
+     * Get book moves of a position key
+     * @param key position key
+     * @param moves result moves (MAX_MOVES), best weight first
+     * @param weights result weights (MAX_MOVES)
+     * @return number of moves
+     */
+    public int getMoves(long key, int[] moves, int[] weights){
+        // First entry with key not lower than searched key
+        int low = 0, high = entries;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(getKey(middle) < key) low = middle + 1; else high = middle;
+        }
+        int count = 0;
+        for(int i = low; i < entries && count < MAX_MOVES && getKey(i) == key; i++){
+            int offset = HEADER_SIZE + i * ENTRY_SIZE;
+            moves[count] = buffer.getInt(offset + 8);
+            weights[count] = buffer.getInt(offset + 12);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Choose a book move of a position
+     * only legal moves are chosen, at random proportional to its weight
+     * @param position position
+     * @param random random source
+     * @return packed move or Move.NONE if position isn't in book
+     */
+    public int probe(Position position, Random random){
+        int[] moves = new int[MAX_MOVES];
+        int[] weights = new int[MAX_MOVES];
+        int[] legal = new int[MoveGenerator.MAX_MOVES];
+        int count = getMoves(position.getKey(), moves, weights);
+        int legalCount = position.generateMoves(legal, 0);
+        long total = 0;
+        for(int i = 0; i < count; i++){
+            if(!contains(legal, legalCount, moves[i])) weights[i] = 0;
+            total += weights[i];
+        }
+        if(total <= 0) return Move.NONE;
+        long choice = (long)(random.nextDouble() * total);
+        for(int i = 0; i < count; i++){
+            choice -= weights[i];
+            if(choice < 0 && weights[i] > 0) return moves[i];
+        }
+        return Move.NONE;
+    }
+
+    /**
+     * Checks if a move is in a moves list
+     * @param moves moves list
+     * @param count moves count
+     * @param move move
+     * @return found or not
+     */
+    private static boolean contains(int[] moves, int count, int move){
+        for(int i = 0; i < count; i++){
+            if(moves[i] == move) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get key of an entry
+     * @param index entry index
+     * @return position key
+     */
+    private long getKey(int index){
+        return buffer.getLong(HEADER_SIZE + index * ENTRY_SIZE);
+    }
+
+    /**
+     * Get number of entries
+     * @return entries count
+     */
+    public int getEntries(){
+        return entries;
+    }
+
+    /**
+     * Get book plies from initial position
+     * @return plies
+     */
+    public int getPlies(){
+        return plies;
+    }
+
+    /**
+     * Book entry, sorted by key, by weight (best first) and by move
+     */
+    public static final class Entry implements Comparable<Entry> {
+        final long key;
+        final int move;
+        final int weight;
+
+        /**
+         * Create a book entry
+         * @param key position key
+         * @param move packed move
+         * @param weight move weight (greater is better)
+         */
+        public Entry(long key, int move, int weight){
+            this.key = key;
+            this.move = move;
+            this.weight = weight;
+        }
+
+        @Override
+        public int compareTo(Entry other){
+            if(key != other.key) return (key < other.key)? -1 : 1;
+            if(weight != other.weight) return (weight > other.weight)? -1 : 1;
+            return Integer.compare(move, other.move);
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package checkers.ia;
+
+import checkers.model.Board;
+import checkers.model.Model;
+import checkers.model.Zobrist;
+import checkers.common.Point;
+
+/**
+ * Class Position
+ * Implements search only game position for IA Player
+ * stores board bitboards, side to move and chained eat piece
+ * and allows to make and unmake packed moves in place,
+ * each made move records its previous bitboards in a fixed stack
+ * so search memory only depends on search depth
+ * Each move is a whole turn (capture moves are complete chained eats),
+ * a check square is only found in positions loaded in a chained eat
+ * Position Zobrist key and evaluation (material and row advancement)
+ * are updated incrementally with each move (checked against a full
+ * evaluation after each make and unmake with assertions enabled, -ea)
+ * Keys of previous positions since last eat or man move (game history
+ * before loaded position and made moves) allow to find repetitions
+ * and game draws (see Model draw rules)
+ *
+ * @author Cristian Tardivo
+ */
+public final class Position {
+    // Max plies from loaded position (undo stack size)
+    public static final int MAX_PLY = 128;
+    // Bitboards
+    private int red;
+    private int black;
+    private int queens;
+    // Side to move
+    private boolean redTurn;
+    // Square of piece that must continue eating (-1 none)
+    private int checkSquare;
+    // Zobrist key
+    private long key;
+    // Evaluation weights and value (black positive)
+    private Evaluation evaluation = Evaluation.DEFAULT;
+    private int score;
+    // Undo stack: bitboards, check squares, keys and evaluations before each move
+    private final int[] reds = new int[MAX_PLY];
+    private final int[] blacks = new int[MAX_PLY];
+    private final int[] queenBits = new int[MAX_PLY];
+    private final int[] checks = new int[MAX_PLY];
+    private final long[] keys = new long[MAX_PLY];
+    private final int[] scores = new int[MAX_PLY];
+    private final int[] reversibles = new int[MAX_PLY];
+    private int ply;
+    // Keys of game positions before loaded position (oldest first)
+    private final long[] history = new long[Model.DRAW_TURNS];
+    private int historyCount;
+    // Turns since last eat or man move
+    private int reversible;
+
+    /**
+     * Create a new position with initial board, red moves first
+     */
+    public Position(){
+        set(Board.INITIAL_RED, Board.INITIAL_BLACK, 0, true, -1);
+    }
+
+    /**
+     * Create a new position from game model
+     * @param model game model
+     */
+    public Position(Model model){
+        load(model);
+    }
+
+    /**
+     * Load game model position and its history, clears undo stack
+     * @param model game model
+     */
+    public void load(Model model){
+        Board board = model.getBoard();
+        Point check = model.getCheckPiece();
+        set(board.getRed(), board.getBlack(), board.getQueens(),
+            model.getCurrentPlayer().isRed(),
+            (check == null)? -1 : Board.toSquare(check.getFirst(), check.getSecond()));
+        // a chained eat in progress can't repeat previous positions
+        if(check != null) return;
+        reversible = model.getReversibleTurns();
+        historyCount = Math.min(reversible, history.length);
+        for(int i = 0; i < historyCount; i++)
+            history[i] = model.getHistoryKey(historyCount - i);
+    }
+
+    /**
+     * Set position values, clears undo stack and history
+     * @param red red pieces bits
+     * @param black black pieces bits
+     * @param queens queens bits
+     * @param redTurn red moves
+     * @param checkSquare piece that must continue eating or -1
+     */
+    public void set(int red, int black, int queens, boolean redTurn, int checkSquare){
+        this.red = red;
+        this.black = black;
+        this.queens = queens;
+        this.redTurn = redTurn;
+        this.checkSquare = checkSquare;
+        key = Zobrist.compute(red, black, queens, redTurn, checkSquare);
+        score = evaluateFull();
+        ply = 0;
+        historyCount = 0;
+        reversible = 0;
+    }
+
+    /**
+     * Copy other position values, evaluation weights and history,
+     * clears undo stack (other made moves are added to history,
+     * a position can be copied over itself)
+     * @param other position to copy
+     */
+    public void copy(Position other){
+        int turns = other.reversible;
+        int count = Math.min(Math.min(turns, other.ply + other.historyCount), history.length);
+        long[] historyKeys = new long[count];
+        for(int i = 0; i < count; i++)
+            historyKeys[i] = other.getHistoryKey(count - i);
+        evaluation = other.evaluation;
+        set(other.red, other.black, other.queens, other.redTurn, other.checkSquare);
+        System.arraycopy(historyKeys, 0, history, 0, count);
+        historyCount = count;
+        reversible = turns;
+    }
+
+    /**
+     * Set evaluation weights
+     * @param evaluation evaluation weights
+     */
+    public void setEvaluation(Evaluation evaluation){
+        this.evaluation = evaluation;
+        score = evaluateFull();
+    }
+
+    /**
+     * Create a position from text:
+     * 32 dark squares in square order (r red man, R red queen,
+     * b black man, B black queen, . empty), side to move (r or b)
+     * and square of piece (of side to move) that must continue eating or -
+     * initial position: "bbbbbbbbbbbb........rrrrrrrrrrrr r -"
+     * @param text position text
+     * @return position
+     * @throws IllegalArgumentException if text isn't a valid position
+     */
+    public static Position parse(String text){
+        String[] fields = text.trim().split("\\s+");
+        if(fields.length < 2 || fields.length > 3 || fields[0].length() != Board.SQUARES)
+            throw new IllegalArgumentException("Invalid position: " + text);
+        int red = 0, black = 0, queens = 0;
+        for(int sq = 0; sq < Board.SQUARES; sq++){
+            switch(fields[0].charAt(sq)){
+                case 'R': red |= 1 << sq; queens |= 1 << sq; break;
+                case 'r': red |= 1 << sq; break;
+                case 'B': black |= 1 << sq; queens |= 1 << sq; break;
+                case 'b': black |= 1 << sq; break;
+                case '.': break;
+                default: throw new IllegalArgumentException("Invalid position: " + text);
+            }
+        }
+        if(!fields[1].equals("r") && !fields[1].equals("b"))
+            throw new IllegalArgumentException("Invalid position: " + text);
+        boolean redTurn = fields[1].equals("r");
+        int checkSquare = -1;
+        if(fields.length == 3 && !fields[2].equals("-")){
+            try {
+                checkSquare = Integer.parseInt(fields[2]);
+            } catch (NumberFormatException ex){
+                throw new IllegalArgumentException("Invalid position: " + text);
+            }
+            // must be a piece of side to move
+            if(checkSquare < 0 || checkSquare >= Board.SQUARES
+               || ((redTurn? red : black) & (1 << checkSquare)) == 0)
+                throw new IllegalArgumentException("Invalid position: " + text);
+        }
+        Position position = new Position();
+        position.set(red, black, queens, redTurn, checkSquare);
+        return position;
+    }
+
+    /**
+     * Get position text (see parse)
+     * @return position text
+     */
+    @Override
+    public String toString(){
+        StringBuilder text = new StringBuilder(Board.SQUARES + 6);
+        for(int sq = 0; sq < Board.SQUARES; sq++){
+            int bit = 1 << sq;
+            boolean queen = (queens & bit) != 0;
+            if((red & bit) != 0) text.append(queen ? 'R' : 'r');
+            else if((black & bit) != 0) text.append(queen ? 'B' : 'b');
+            else text.append('.');
+        }
+        text.append(redTurn ? " r " : " b ");
+        text.append((checkSquare < 0)? "-" : String.valueOf(checkSquare));
+        return text.toString();
+    }
+
+    /**
+     * Generates legal moves for side to move
+     * @param moves buffer to write moves
+     * @param offset first buffer position to write
+     * @return number of moves written
+     */
+    public int generateMoves(int[] moves, int offset){
+        if(redTurn)
+            return MoveGenerator.generateMoves(red, black, queens, true, checkSquare, moves, offset);
+        return MoveGenerator.generateMoves(black, red, queens, false, checkSquare, moves, offset);
+    }
+
+    /**
+     * Generates capture moves (complete chained eats) for side to move
+     * (only legal moves when there are any, eats are obligatory)
+     * @param moves buffer to write moves
+     * @param offset first buffer position to write
+     * @return number of moves written
+     */
+    public int generateCaptures(int[] moves, int offset){
+        if(redTurn)
+            return MoveGenerator.generateCaptures(red, black, queens, true, checkSquare, moves, offset);
+        return MoveGenerator.generateCaptures(black, red, queens, false, checkSquare, moves, offset);
+    }
+
+    /**
+     * Get squares of a legal move path
+     * @param move packed move
+     * @param squares result squares (Board.SQUARES): origin, each eat destination
+     * @return number of squares
+     */
+    public int getPath(int move, int[] squares){
+        if(redTurn)
+            return MoveGenerator.path(red, black, queens, true, move, squares);
+        return MoveGenerator.path(black, red, queens, false, move, squares);
+    }
+
+    /**
+     * Makes a legal move, the turn always changes
+     * (a capture move eats all pieces of its chained eat)
+     * @param move packed move
+     */
+    public void makeMove(int move){
+        int from = Move.from(move);
+        int to = Move.to(move);
+        boolean queen = (queens & (1 << from)) != 0;
+        boolean queenTo = queen || Move.isPromotion(move);
+        reds[ply] = red;
+        blacks[ply] = black;
+        queenBits[ply] = queens;
+        checks[ply] = checkSquare;
+        keys[ply] = key;
+        scores[ply] = score;
+        reversibles[ply] = reversible;
+        ply++;
+        // eats and men moves can't be undone
+        reversible = (queen && !Move.isCapture(move))? reversible + 1 : 0;
+        key ^= Zobrist.piece(redTurn, queen, from) ^ Zobrist.piece(redTurn, queenTo, to);
+        score += evaluation.value(redTurn, queenTo, to) - evaluation.value(redTurn, queen, from);
+        key ^= Zobrist.check(checkSquare);
+        // Move piece (a queen capture path can end in its origin)
+        queens &= ~(1 << from);
+        if(redTurn) red = (red & ~(1 << from)) | (1 << to);
+        else black = (black & ~(1 << from)) | (1 << to);
+        // Eat rival pieces
+        int captured = Move.captured(move);
+        for(int eaten = captured; eaten != 0; eaten &= eaten - 1){
+            int square = Integer.numberOfTrailingZeros(eaten);
+            boolean eatenQueen = (queens & (1 << square)) != 0;
+            key ^= Zobrist.piece(!redTurn, eatenQueen, square);
+            score -= evaluation.value(!redTurn, eatenQueen, square);
+        }
+        queens &= ~captured;
+        if(redTurn) black &= ~captured; else red &= ~captured;
+        // Moved piece or new queen
+        if(queenTo) queens |= 1 << to;
+        // Update turn
+        checkSquare = -1;
+        redTurn = !redTurn;
+        key ^= Zobrist.BLACK_TURN;
+        assert score == evaluateFull() : "incremental evaluation " + score + " != " + evaluateFull() + " after " + Move.toString(move);
+    }
+
+    /**
+     * Unmakes last made move
+     */
+    public void unmakeMove(){
+        ply--;
+        red = reds[ply];
+        black = blacks[ply];
+        queens = queenBits[ply];
+        checkSquare = checks[ply];
+        key = keys[ply];
+        score = scores[ply];
+        reversible = reversibles[ply];
+        redTurn = !redTurn;
+        assert score == evaluateFull() : "incremental evaluation " + score + " != " + evaluateFull() + " after unmake";
+    }
+
+    /**
+     * Get key of a previous position
+     * @param turns turns before current position [1..available history]
+     * @return position key
+     */
+    private long getHistoryKey(int turns){
+        return (turns <= ply)? keys[ply - turns] : history[historyCount + ply - turns];
+    }
+
+    /**
+     * Get number of previous repetitions of current position
+     * (since last eat or man move)
+     * @param max stop counting at max repetitions
+     * @return repetitions, up to max
+     */
+    public int getRepetitions(int max){
+        int repetitions = 0;
+        int turns = Math.min(reversible, ply + historyCount);
+        for(int back = 2; back <= turns && repetitions < max; back += 2){
+            if(getHistoryKey(back) == key) repetitions++;
+        }
+        return repetitions;
+    }
+
+    /**
+     * Checks if current position was found before (a cycle)
+     * @return repeated or not
+     */
+    public boolean isRepetition(){
+        return getRepetitions(1) > 0;
+    }
+
+    /**
+     * Checks if game is a draw by game rules: position repeated
+     * Model.DRAW_REPETITIONS times or Model.DRAW_TURNS turns without
+     * eats or men moves
+     * @return draw or not
+     */
+    public boolean isDraw(){
+        return reversible >= Model.DRAW_TURNS
+               || getRepetitions(Model.DRAW_REPETITIONS - 1) >= Model.DRAW_REPETITIONS - 1;
+    }
+
+    /**
+     * Get number of turns since last eat or man move
+     * @return turns
+     */
+    public int getReversibleTurns(){
+        return reversible;
+    }
+
+    /**
+     * Checks if side to move has any legal move
+     * @return has or hasn't movements
+     */
+    public boolean hasMoves(){
+        if(redTurn)
+            return MoveGenerator.hasMoves(red, black, queens, true);
+        return MoveGenerator.hasMoves(black, red, queens, false);
+    }
+
+    /**
+     * Evaluate current position (default weights are iaModel valoration)
+     * kept updated by make and unmake moves
+     * Min: red player, negative evaluation
+     * Max: black player, positive evaluation
+     * @return position value
+     */
+    public int evaluate(){
+        return score;
+    }
+
+    /**
+     * Evaluate current position from scratch
+     * (must be equal to incremental evaluation)
+     * @return position value
+     */
+    public int evaluateFull(){
+        return evaluation.evaluate(red, black, queens);
+    }
+
+    /**
+     * Get evaluation weights
+     * @return evaluation weights
+     */
+    public Evaluation getEvaluation(){
+        return evaluation;
+    }
+
+    /**
+     * Get red pieces bits
+     * @return red bitboard
+     */
+    public int getRed(){
+        return red;
+    }
+
+    /**
+     * Get black pieces bits
+     * @return black bitboard
+     */
+    public int getBlack(){
+        return black;
+    }
+
+    /**
+     * Get queens bits
+     * @return queens bitboard
+     */
+    public int getQueens(){
+        return queens;
+    }
+
+    /**
+     * Is red player turn (Min player)
+     * @return true or false
+     */
+    public boolean isRedTurn(){
+        return redTurn;
+    }
+
+    /**
+     * Get square of piece that must continue eating
+     * @return square or -1
+     */
+    public int getCheckSquare(){
+        return checkSquare;
+    }
+
+    /**
+     * Get position Zobrist key
+     * @return key
+     */
+    public long getKey(){
+        return key;
+    }
+
+    /**
+     * Get number of moves made since position load
+     * @return current ply
+     */
+    public int getPly(){
+        return ply;
+    }
+}
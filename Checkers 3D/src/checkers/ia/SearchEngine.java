@@ -0,0 +1,358 @@
+package checkers.ia;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Class SearchEngine
+ * Implements IA search over a configurable number of threads
+ * sharing one lock free transposition table (Lazy SMP):
+ * the main worker searches in the caller thread and gives the result,
+ * helper workers search the same position in their own threads
+ * filling the shared table, and are stopped when main worker ends
+ * Helper threads, workers and table are created once and reused
+ * by every search of the engine (moves and games)
+ * Search stats are counted by each worker and merged on read,
+ * they can be read from any thread while a search runs
+ *
+ * @author Cristian Tardivo
+ */
+public final class SearchEngine {
+    // Max depth of any search
+    public static final int MAX_DEPTH = 64;
+    // Max search threads
+    public static final int MAX_THREADS = 64;
+    // Shared transposition table
+    private final TranspositionTable table;
+    // Search workers (0 main worker)
+    private final SearchWorker[] workers;
+    // Helper threads pool and running helper searches
+    private final ExecutorService helpers;
+    private final Future<?>[] tasks;
+    // Table size in MB
+    private final int hashSize;
+    // Evaluation weights (null root position weights)
+    private Evaluation evaluation;
+    // Root moves buffer
+    private final int[] rootMoves;
+    // Last search results
+    private int bestMove;
+    private int score;
+    private volatile int depth;
+    private volatile long time;
+    // Current search
+    private volatile long start;
+    private volatile boolean searching;
+
+    /**
+     * Create a new search engine
+     * @param threads number of search threads (main and helpers)
+     * @param hashSize transposition table size in MB
+     */
+    public SearchEngine(int threads, int hashSize){
+        this.hashSize = hashSize;
+        table = new TranspositionTable(hashSize);
+        workers = new SearchWorker[Math.max(1, Math.min(threads, MAX_THREADS))];
+        for(int i = 0; i < workers.length; i++)
+            workers[i] = new SearchWorker(i, table);
+        rootMoves = new int[MoveGenerator.MAX_MOVES];
+        tasks = new Future<?>[workers.length - 1];
+        helpers = (tasks.length == 0)? null : Executors.newFixedThreadPool(tasks.length, new ThreadFactory(){
+            private int count;
+            @Override
+            public Thread newThread(Runnable task){
+                Thread helper = new Thread(task);
+                helper.setName("iaPlayer Helper " + (++count));
+                helper.setDaemon(true);
+                return helper;
+            }
+        });
+    }
+
+    /**
+     * Search best move of a position
+     * blocks caller thread until max depth or time end
+     * @param root position to search
+     * @param maxDepth max depth [1..MAX_DEPTH]
+     * @param timeBudget max search time (ms)
+     * @return best move or Move.NONE if there are no moves
+     */
+    public int think(Position root, int maxDepth, long timeBudget){
+        return think(root, maxDepth, timeBudget, new CancelToken());
+    }
+
+    /**
+     * Search best move of a position
+     * blocks caller thread until max depth, time end or token cancellation
+     * a cancelled search returns best move found so far
+     * @param root position to search
+     * @param maxDepth max depth [1..MAX_DEPTH]
+     * @param timeBudget max search time (ms)
+     * @param token cancellation token (reset by caller)
+     * @return best move or Move.NONE if there are no moves
+     */
+    public int think(Position root, int maxDepth, long timeBudget, CancelToken token){
+        long start = System.currentTimeMillis();
+        this.start = start;
+        maxDepth = Math.max(1, Math.min(maxDepth, MAX_DEPTH));
+        table.newSearch();
+        bestMove = Move.NONE;
+        score = 0;
+        depth = 0;
+        for(SearchWorker worker : workers)
+            worker.prepare(root, maxDepth, start + timeBudget, token, evaluation);
+        searching = true;
+        // Only one move, no search needed
+        int count = root.generateMoves(rootMoves, 0);
+        if(count <= 1){
+            bestMove = (count == 1)? rootMoves[0] : Move.NONE;
+            time = System.currentTimeMillis() - start;
+            searching = false;
+            return bestMove;
+        }
+        // Start helpers
+        for(int i = 0; i < tasks.length; i++)
+            tasks[i] = helpers.submit(workers[i + 1]);
+        // Main search
+        workers[0].run();
+        // Stop helpers and wait them
+        for(int i = 0; i < tasks.length; i++)
+            workers[i + 1].stop();
+        boolean interrupted = false;
+        for(int i = 0; i < tasks.length; i++){
+            while(true){
+                try {
+                    tasks[i].get();
+                    break;
+                } catch (InterruptedException ex){
+                    interrupted = true;
+                } catch (ExecutionException ex){
+                    System.err.println("SearchEngine: helper search failed " + ex.getCause());
+                    break;
+                }
+            }
+            tasks[i] = null;
+        }
+        if(interrupted)
+            Thread.currentThread().interrupt();
+        // Main worker result (first root move if cut short before any move)
+        bestMove = workers[0].getBestMove();
+        if(bestMove == Move.NONE)
+            bestMove = rootMoves[0];
+        score = workers[0].getBestScore();
+        depth = workers[0].getCompletedDepth();
+        time = System.currentTimeMillis() - start;
+        searching = false;
+        return bestMove;
+    }
+
+    /**
+     * Get best move of a position stored in transposition table
+     * (expected move of a position searched before, like the
+     * opponent reply of last search best move)
+     * @param position position
+     * @return legal packed move or Move.NONE if not found
+     */
+    public int getTableMove(Position position){
+        long entry = table.probe(position.getKey());
+        int move = (entry == 0)? Move.NONE : TranspositionTable.getMove(entry);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = position.generateMoves(moves, 0);
+        for(int i = 0; i < count; i++){
+            if(moves[i] == move) return move;
+        }
+        return Move.NONE;
+    }
+
+    /**
+     * Clear transposition table and moves ordering (new game)
+     */
+    public void clear(){
+        table.clear();
+        for(SearchWorker worker : workers)
+            worker.getOrdering().clear();
+    }
+
+    /**
+     * Stop helper threads, engine can't be used after shutdown
+     */
+    public void shutdown(){
+        if(helpers != null)
+            helpers.shutdown();
+    }
+
+    /**
+     * Set evaluation weights of searches
+     * @param evaluation evaluation weights or null to use root position weights
+     */
+    public void setEvaluation(Evaluation evaluation){
+        this.evaluation = evaluation;
+    }
+
+    /**
+     * Set endgame database probed by searches (not while searching)
+     * @param endgame endgame database or null for none
+     */
+    public void setEndgame(EndgameDatabase endgame){
+        for(SearchWorker worker : workers)
+            worker.setEndgame(endgame);
+    }
+
+    /**
+     * Set random seed used to choose between equal root moves
+     * @param seed random seed
+     */
+    public void setSeed(long seed){
+        for(int i = 0; i < workers.length; i++)
+            workers[i].getOrdering().setSeed(seed + i);
+    }
+
+    /**
+     * Get number of search threads
+     * @return threads
+     */
+    public int getThreads(){
+        return workers.length;
+    }
+
+    /**
+     * Get transposition table size
+     * @return size in MB
+     */
+    public int getHashSize(){
+        return hashSize;
+    }
+
+    /**
+     * Get best move of last search
+     * @return packed move or Move.NONE
+     */
+    public int getBestMove(){
+        return bestMove;
+    }
+
+    /**
+     * Get score of last search best move
+     * for player to move, positive is better
+     * @return score
+     */
+    public int getScore(){
+        return score;
+    }
+
+    /**
+     * Is a search running
+     * @return searching or not
+     */
+    public boolean isSearching(){
+        return searching;
+    }
+
+    /**
+     * Get completed depth of current or last search
+     * @return depth
+     */
+    public int getDepth(){
+        return searching? workers[0].getCompletedDepth() : depth;
+    }
+
+    /**
+     * Get time of current or last search
+     * @return time (ms)
+     */
+    public long getTime(){
+        return searching? System.currentTimeMillis() - start : time;
+    }
+
+    /**
+     * Get searched nodes in current or last search (all threads)
+     * @return nodes count
+     */
+    public long getNodes(){
+        long nodes = 0;
+        for(SearchWorker worker : workers)
+            nodes += worker.getNodes();
+        return nodes;
+    }
+
+    /**
+     * Get positions solved by endgame database in current or last search (all threads)
+     * @return endgame hits
+     */
+    public long getEndgameHits(){
+        long hits = 0;
+        for(SearchWorker worker : workers)
+            hits += worker.getEndgameHits();
+        return hits;
+    }
+
+    /**
+     * Get nodes per second of current or last search (all threads)
+     * @return nodes per second
+     */
+    public long getNodesPerSecond(){
+        return getNodes() * 1000 / Math.max(1, getTime());
+    }
+
+    /**
+     * Get transposition table hit rate of current or last search (all threads)
+     * @return hits / probes [0..1]
+     */
+    public double getHashHitRate(){
+        long probes = 0;
+        long hits = 0;
+        for(SearchWorker worker : workers){
+            probes += worker.getTableProbes();
+            hits += worker.getTableHits();
+        }
+        return (probes == 0)? 0 : (double)hits / probes;
+    }
+
+    /**
+     * Get transposition table cut rate of current or last search (all threads)
+     * (table entries that ended a node search)
+     * @return cuts / probes [0..1]
+     */
+    public double getHashCutRate(){
+        long probes = 0;
+        long cuts = 0;
+        for(SearchWorker worker : workers){
+            probes += worker.getTableProbes();
+            cuts += worker.getTableCuts();
+        }
+        return (probes == 0)? 0 : (double)cuts / probes;
+    }
+
+    /**
+     * Get rate of beta cut-offs made by first searched move
+     * of current or last search (all threads)
+     * @return first move cut-offs / cut-offs [0..1]
+     */
+    public double getFirstMoveCutoffRate(){
+        long cutoffs = 0;
+        long first = 0;
+        for(SearchWorker worker : workers){
+            cutoffs += worker.getCutoffs();
+            first += worker.getFirstCutoffs();
+        }
+        return (cutoffs == 0)? 0 : (double)first / cutoffs;
+    }
+
+    /**
+     * Get average searched moves of each expanded node
+     * of current or last search (all threads)
+     * @return average branching factor
+     */
+    public double getBranchingFactor(){
+        long expanded = 0;
+        long moves = 0;
+        for(SearchWorker worker : workers){
+            expanded += worker.getExpanded();
+            moves += worker.getSearchedMoves();
+        }
+        return (expanded == 0)? 0 : (double)moves / expanded;
+    }
+}
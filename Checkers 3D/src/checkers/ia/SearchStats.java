@@ -0,0 +1,163 @@
+package checkers.ia;
+
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+
+/**
+ * Class SearchStats
+ * Implements JMX MBean of iaPlayer search stats
+ * ("checkers.ia:type=SearchStats", registered when first iaPlayer
+ * is created), current search values are read from search engine
+ * (workers counters merged on read) and moves totals are recorded
+ * by iaPlayer after each search
+ *
+ * @author Cristian Tardivo
+ */
+public final class SearchStats implements SearchStatsMBean {
+    // MBean name
+    public static final String NAME = "checkers.ia:type=SearchStats";
+    // Unique instance
+    private static SearchStats instance;
+    // Current iaPlayer search engine
+    private volatile SearchEngine engine;
+    // Moves totals
+    private long moves;
+    private long totalNodes;
+    private long totalTime;
+    private long maxTime;
+
+    /**
+     * Create search stats
+     */
+    private SearchStats(){
+    }
+
+    /**
+     * Get search stats, registers MBean on first call
+     * @return search stats
+     */
+    public static synchronized SearchStats getInstance(){
+        if(instance == null){
+            instance = new SearchStats();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(NAME));
+            } catch (Exception ex){
+                System.err.println("Can't register SearchStats MBean: " + ex);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Set search engine of stats
+     * @param engine search engine
+     */
+    void setEngine(SearchEngine engine){
+        this.engine = engine;
+    }
+
+    /**
+     * Record a finished move search
+     * @param engine search engine
+     */
+    synchronized void record(SearchEngine engine){
+        moves++;
+        totalNodes += engine.getNodes();
+        totalTime += engine.getTime();
+        maxTime = Math.max(maxTime, engine.getTime());
+    }
+
+    @Override
+    public boolean isSearching(){
+        SearchEngine current = engine;
+        return current != null && current.isSearching();
+    }
+
+    @Override
+    public long getNodes(){
+        SearchEngine current = engine;
+        return (current == null)? 0 : current.getNodes();
+    }
+
+    @Override
+    public long getNodesPerSecond(){
+        SearchEngine current = engine;
+        return (current == null)? 0 : current.getNodesPerSecond();
+    }
+
+    @Override
+    public int getDepth(){
+        SearchEngine current = engine;
+        return (current == null)? 0 : current.getDepth();
+    }
+
+    @Override
+    public double getHashHitRate(){
+        SearchEngine current = engine;
+        return (current == null)? 0 : current.getHashHitRate();
+    }
+
+    @Override
+    public double getHashCutRate(){
+        SearchEngine current = engine;
+        return (current == null)? 0 : current.getHashCutRate();
+    }
+
+    @Override
+    public double getFirstMoveCutoffRate(){
+        SearchEngine current = engine;
+        return (current == null)? 0 : current.getFirstMoveCutoffRate();
+    }
+
+    @Override
+    public double getBranchingFactor(){
+        SearchEngine current = engine;
+        return (current == null)? 0 : current.getBranchingFactor();
+    }
+
+    @Override
+    public long getMoveTime(){
+        SearchEngine current = engine;
+        return (current == null)? 0 : current.getTime();
+    }
+
+    @Override
+    public synchronized long getMoves(){
+        return moves;
+    }
+
+    @Override
+    public synchronized long getTotalNodes(){
+        return totalNodes;
+    }
+
+    @Override
+    public synchronized double getAverageMoveTime(){
+        return (moves == 0)? 0 : (double)totalTime / moves;
+    }
+
+    @Override
+    public synchronized long getMaxMoveTime(){
+        return maxTime;
+    }
+
+    @Override
+    public int getThreads(){
+        SearchEngine current = engine;
+        return (current == null)? 0 : current.getThreads();
+    }
+
+    @Override
+    public int getHashSize(){
+        SearchEngine current = engine;
+        return (current == null)? 0 : current.getHashSize();
+    }
+
+    @Override
+    public synchronized void reset(){
+        moves = 0;
+        totalNodes = 0;
+        totalTime = 0;
+        maxTime = 0;
+    }
+}
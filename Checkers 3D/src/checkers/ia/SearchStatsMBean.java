@@ -0,0 +1,106 @@
+package checkers.ia;
+
+/**
+ * Interface SearchStatsMBean
+ * JMX management interface of iaPlayer search stats (see SearchStats)
+ * values of current search while searching, else of last search
+ *
+ * @author Cristian Tardivo
+ */
+public interface SearchStatsMBean {
+
+    /**
+     * Is iaPlayer searching a move
+     * @return searching or not
+     */
+    public boolean isSearching();
+
+    /**
+     * Get searched nodes (all threads)
+     * @return nodes count
+     */
+    public long getNodes();
+
+    /**
+     * Get searched nodes per second (all threads)
+     * @return nodes per second
+     */
+    public long getNodesPerSecond();
+
+    /**
+     * Get completed search depth
+     * @return depth
+     */
+    public int getDepth();
+
+    /**
+     * Get transposition table hit rate
+     * @return hits / probes [0..1]
+     */
+    public double getHashHitRate();
+
+    /**
+     * Get transposition table cut rate
+     * @return cuts / probes [0..1]
+     */
+    public double getHashCutRate();
+
+    /**
+     * Get rate of beta cut-offs made by first searched move
+     * @return first move cut-offs / cut-offs [0..1]
+     */
+    public double getFirstMoveCutoffRate();
+
+    /**
+     * Get average searched moves of each expanded node
+     * @return average branching factor
+     */
+    public double getBranchingFactor();
+
+    /**
+     * Get search time of current or last move
+     * @return time (ms)
+     */
+    public long getMoveTime();
+
+    /**
+     * Get number of searched moves since start or reset
+     * @return moves count
+     */
+    public long getMoves();
+
+    /**
+     * Get searched nodes of all moves since start or reset
+     * @return nodes count
+     */
+    public long getTotalNodes();
+
+    /**
+     * Get average search time of moves since start or reset
+     * @return time (ms)
+     */
+    public double getAverageMoveTime();
+
+    /**
+     * Get max search time of moves since start or reset
+     * @return time (ms)
+     */
+    public long getMaxMoveTime();
+
+    /**
+     * Get number of search threads
+     * @return threads
+     */
+    public int getThreads();
+
+    /**
+     * Get transposition table size
+     * @return size in MB
+     */
+    public int getHashSize();
+
+    /**
+     * Reset moves totals
+     */
+    public void reset();
+}
@@ -0,0 +1,466 @@
+package checkers.ia;
+
+import checkers.model.Model;
+
+/**
+ * Class SearchWorker
+ * Implements one search thread of the SearchEngine:
+ * iterative deepening negamax principal variation search
+ * with aspiration windows and a captures only quiescence search
+ * Each worker has its own position, moves buffer and moves ordering,
+ * the transposition table is shared by all workers
+ * Helper workers (id > 0) start at a different depth and add random
+ * values to moves order, so they search other parts of the tree
+ * and fill the shared table for the main worker (Lazy SMP)
+ * Positions without moves are lost, positions solved by the endgame
+ * database end the search with its exact value (wins and losses are
+ * scored by distance to game end from search root, stored in
+ * transposition table relative to their node, like mate scores)
+ * Repeated positions are draws at their first repetition, so cycles
+ * are pruned as soon as they are found
+ *
+ * @author Cristian Tardivo
+ */
+final class SearchWorker implements Runnable {
+    // Max score value (any evaluation is lower)
+    static final int INFINITY = 30000;
+    // Initial aspiration window half size
+    private static final int ASPIRATION = 30;
+    // Nodes between time and cancellation checks
+    private static final int CHECK_NODES = 1024;
+    // Win score (minus turns to game end from root)
+    static final int WIN = 20000;
+    // Lowest win score (any win is at least this value)
+    private static final int WIN_BOUND = WIN - EndgameIndex.MAX_DISTANCE - Position.MAX_PLY;
+    // Worker number (0 main worker)
+    private final int id;
+    // Shared transposition table
+    private final TranspositionTable table;
+    // Search position
+    private final Position position;
+    // Moves buffer, MAX_MOVES moves for each ply
+    private final int[] moves;
+    // Moves order
+    private final MoveOrdering ordering;
+    // Endgame database (null none) and its max pieces
+    private EndgameDatabase endgame;
+    private int endgamePieces;
+    // Search limits
+    private int maxDepth;
+    private long deadline;
+    private CancelToken token;
+    private volatile boolean stopped;
+    private boolean timeout;
+    // Search results
+    private int bestMove;
+    private int bestScore;
+    private volatile int completedDepth;
+    private int iterationMove;
+    // Search stats (written only by worker thread, read by others)
+    private long nodes;
+    private long tableProbes;
+    private long tableHits;
+    private long tableCuts;
+    private long cutoffs;
+    private long firstCutoffs;
+    private long expanded;
+    private long searchedMoves;
+    private long endgameHits;
+
+    /**
+     * Create a new search worker
+     * @param id worker number (0 main worker)
+     * @param table shared transposition table
+     */
+    SearchWorker(int id, TranspositionTable table){
+        this.id = id;
+        this.table = table;
+        position = new Position();
+        moves = new int[Position.MAX_PLY * MoveGenerator.MAX_MOVES];
+        ordering = new MoveOrdering(moves.length);
+        ordering.setNoisy(id > 0);
+    }
+
+    /**
+     * Prepare a new search
+     * @param root position to search
+     * @param depth max depth
+     * @param deadline search end time (ms)
+     * @param token search cancellation token
+     * @param evaluation evaluation weights or null for root weights
+     */
+    void prepare(Position root, int depth, long deadline, CancelToken token, Evaluation evaluation){
+        position.copy(root);
+        if(evaluation != null)
+            position.setEvaluation(evaluation);
+        maxDepth = depth;
+        this.deadline = deadline;
+        this.token = token;
+        stopped = false;
+        timeout = false;
+        bestMove = Move.NONE;
+        bestScore = 0;
+        completedDepth = 0;
+        iterationMove = Move.NONE;
+        nodes = 0;
+        tableProbes = 0;
+        tableHits = 0;
+        tableCuts = 0;
+        cutoffs = 0;
+        firstCutoffs = 0;
+        expanded = 0;
+        searchedMoves = 0;
+        endgameHits = 0;
+        ordering.newSearch();
+    }
+
+    /**
+     * Set endgame database probed by searches (not while searching)
+     * @param endgame endgame database or null
+     */
+    void setEndgame(EndgameDatabase endgame){
+        this.endgame = endgame;
+        endgamePieces = (endgame == null)? 0 : endgame.getMaxPieces();
+    }
+
+    /**
+     * Stop current search as soon as possible
+     */
+    void stop(){
+        stopped = true;
+    }
+
+    /**
+     * Iterative deepening search until max depth, time end or cancellation
+     * if first iteration is cut short, best root move searched is kept
+     */
+    @Override
+    public void run(){
+        int score = 0;
+        int first = 1 + (id & 1);
+        for(int depth = first; depth <= maxDepth; depth++){
+            // Aspiration window around last score, widened on fails
+            int delta = ASPIRATION;
+            int alpha = (depth == first)? -INFINITY : Math.max(score - delta, -INFINITY);
+            int beta = (depth == first)? INFINITY : Math.min(score + delta, INFINITY);
+            while(true){
+                iterationMove = Move.NONE;
+                score = pvs(depth, alpha, beta);
+                if(timeout) break;
+                if(score <= alpha && alpha > -INFINITY){
+                    alpha = Math.max(score - delta, -INFINITY);
+                } else if(score >= beta && beta < INFINITY){
+                    beta = Math.min(score + delta, INFINITY);
+                } else {
+                    break;
+                }
+                delta *= 2;
+            }
+            if(timeout){
+                if(completedDepth == 0) bestMove = iterationMove;
+                break;
+            }
+            bestMove = iterationMove;
+            bestScore = score;
+            completedDepth = depth;
+        }
+    }
+
+    /**
+     * Checks search time, stop and cancellation requests
+     * @return search must end
+     */
+    private boolean checkTime(){
+        if((++nodes & (CHECK_NODES - 1)) == 0
+           && (stopped || token.isCancelled() || System.currentTimeMillis() >= Math.min(deadline, token.getDeadline())))
+            timeout = true;
+        return timeout;
+    }
+
+    /**
+     * Negamax principal variation search
+     * first move is searched with full window, the others with a null
+     * window and searched again if they improve alpha
+     * moves are made and unmade over search position, each move is a
+     * whole turn (a chained eat is one move), so depth counts turns
+     * @param depth  Remaining depth in the search tree
+     * @param alpha  Current alpha value
+     * @param beta   Current beta value
+     * @return       Current node valoration for player to move
+     */
+    private int pvs(int depth, int alpha, int beta){
+        // Generate moves in this ply buffer segment
+        int ply = position.getPly();
+        int offset = ply * MoveGenerator.MAX_MOVES;
+        int count = position.generateMoves(moves, offset);
+        if(checkTime()) return 0;
+        boolean red = position.isRedTurn();
+        // draw: a cycle or too many turns without eats or men moves (not root)
+        if(ply > 0 && count > 0
+           && (position.isRepetition() || position.getReversibleTurns() >= Model.DRAW_TURNS))
+            return 0;
+        // solved endgame position (not root, not in a chained eat,
+        // results beyond draw turns rule are searched)
+        if(ply > 0 && endgame != null && position.getCheckSquare() < 0
+           && Integer.bitCount(position.getRed() | position.getBlack()) <= endgamePieces){
+            int value = endgame.probe(position.getRed(), position.getBlack(), position.getQueens(), red);
+            if(value != EndgameDatabase.UNKNOWN
+               && EndgameDatabase.isExact(value, position.getReversibleTurns())){
+                endgameHits++;
+                return endgameScore((byte)value, ply);
+            }
+        }
+        // player to move can't move: game lost
+        if(count == 0)
+            return ply - WIN;
+        // can't explore more nodes, resolve eats
+        if(depth <= 0)
+            return quiesce(alpha, beta);
+        // Check transposition table
+        boolean root = ply == 0;
+        long key = position.getKey();
+        long entry = table.probe(key);
+        int hashMove = Move.NONE;
+        tableProbes++;
+        if(entry != 0){
+            tableHits++;
+            hashMove = TranspositionTable.getMove(entry);
+            if(!root && TranspositionTable.getDepth(entry) >= depth){
+                int score = fromTable(TranspositionTable.getScore(entry), ply);
+                int bound = TranspositionTable.getBound(entry);
+                if(bound == TranspositionTable.EXACT
+                   || (bound == TranspositionTable.LOWER && score >= beta)
+                   || (bound == TranspositionTable.UPPER && score <= alpha)){
+                    tableCuts++;
+                    return score;
+                }
+            }
+        }
+        // Order moves
+        ordering.score(moves, offset, count, hashMove, position.getQueens(), red, ply);
+        int alphaStart = alpha;
+        int best = -INFINITY;
+        int bestMove = Move.NONE;
+        expanded++;
+        // search best move
+        for(int i = offset; i < offset + count; i++){
+            int move = ordering.next(moves, i, offset + count);
+            searchedMoves++;
+            position.makeMove(move);
+            int value;
+            if(i == offset){
+                // full window
+                value = -pvs(depth - 1, -beta, -alpha);
+            } else {
+                // null window, search again if move is better
+                value = -pvs(depth - 1, -alpha - 1, -alpha);
+                if(value > alpha && value < beta)
+                    value = -pvs(depth - 1, -beta, -alpha);
+            }
+            position.unmakeMove();
+            if(timeout) return 0;
+            // select best succesor
+            if(value > best){
+                best = value;
+                bestMove = move;
+                if(root) iterationMove = move;
+                if(value > alpha){
+                    alpha = value;
+                    if(alpha >= beta){ // cut-off
+                        cutoffs++;
+                        if(i == offset) firstCutoffs++;
+                        ordering.update(move, red, ply, depth);
+                        break;
+                    }
+                }
+            }
+        }
+        // save and return result
+        int bound = (best <= alphaStart)? TranspositionTable.UPPER :
+                    (best >= beta)? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        table.store(key, depth, bound, toTable(best, ply), bestMove);
+        return best;
+    }
+
+    /**
+     * Score of an endgame database value for player to move
+     * faster wins and slower losses from search root are better
+     * @param value database value
+     * @param ply node ply from root
+     * @return score
+     */
+    private static int endgameScore(byte value, int ply){
+        if(value == EndgameIndex.DRAW) return 0;
+        int distance = ply + EndgameIndex.distance(value);
+        return EndgameIndex.isWin(value)? WIN - distance : distance - WIN;
+    }
+
+    /**
+     * Convert a search score to transposition table score
+     * (wins and losses counted from node instead of root)
+     * @param score score from root
+     * @param ply node ply from root
+     * @return table score
+     */
+    private static int toTable(int score, int ply){
+        if(score >= WIN_BOUND) return score + ply;
+        if(score <= -WIN_BOUND) return score - ply;
+        return score;
+    }
+
+    /**
+     * Convert a transposition table score to search score
+     * @param score table score (wins and losses counted from node)
+     * @param ply node ply from root
+     * @return score from root
+     */
+    private static int fromTable(int score, int ply){
+        if(score >= WIN_BOUND) return score - ply;
+        if(score <= -WIN_BOUND) return score + ply;
+        return score;
+    }
+
+    /**
+     * Quiescence search over obligatory eats
+     * eats can't be avoided, so there is no stand pat: while player to
+     * move has captures all of them (whole chained eats) are searched,
+     * quiet positions are evaluated
+     * @param alpha  Current alpha value
+     * @param beta   Current beta value
+     * @return       Current node valoration for player to move
+     */
+    private int quiesce(int alpha, int beta){
+        int ply = position.getPly();
+        int offset = ply * MoveGenerator.MAX_MOVES;
+        boolean red = position.isRedTurn();
+        int count = (ply < Position.MAX_PLY - 1)? position.generateCaptures(moves, offset) : 0;
+        if(checkTime()) return 0;
+        // Quiet position (lost if player to move can't move)
+        if(count == 0){
+            if(!position.hasMoves()) return ply - WIN;
+            return red? -position.evaluate() : position.evaluate();
+        }
+        // search captures
+        ordering.score(moves, offset, count, Move.NONE, position.getQueens(), red, ply);
+        int best = -INFINITY;
+        for(int i = offset; i < offset + count; i++){
+            int move = ordering.next(moves, i, offset + count);
+            position.makeMove(move);
+            int value = -quiesce(-beta, -alpha);
+            position.unmakeMove();
+            if(timeout) return 0;
+            if(value > best){
+                best = value;
+                if(value > alpha){
+                    alpha = value;
+                    if(alpha >= beta) break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Get moves ordering of this worker
+     * @return moves ordering
+     */
+    MoveOrdering getOrdering(){
+        return ordering;
+    }
+
+    /**
+     * Get best move of last completed iteration
+     * @return packed move or Move.NONE
+     */
+    int getBestMove(){
+        return bestMove;
+    }
+
+    /**
+     * Get score of last completed iteration
+     * @return score for player to move
+     */
+    int getBestScore(){
+        return bestScore;
+    }
+
+    /**
+     * Get last completed depth
+     * @return depth
+     */
+    int getCompletedDepth(){
+        return completedDepth;
+    }
+
+    /**
+     * Get searched nodes
+     * @return nodes count
+     */
+    long getNodes(){
+        return nodes;
+    }
+
+    /**
+     * Get transposition table probes
+     * @return probes count
+     */
+    long getTableProbes(){
+        return tableProbes;
+    }
+
+    /**
+     * Get transposition table probes found
+     * @return hits count
+     */
+    long getTableHits(){
+        return tableHits;
+    }
+
+    /**
+     * Get transposition table entries that ended a node search
+     * @return cuts count
+     */
+    long getTableCuts(){
+        return tableCuts;
+    }
+
+    /**
+     * Get beta cut-offs
+     * @return cut-offs count
+     */
+    long getCutoffs(){
+        return cutoffs;
+    }
+
+    /**
+     * Get beta cut-offs made by first searched move
+     * @return cut-offs count
+     */
+    long getFirstCutoffs(){
+        return firstCutoffs;
+    }
+
+    /**
+     * Get nodes whose moves were searched
+     * @return nodes count
+     */
+    long getExpanded(){
+        return expanded;
+    }
+
+    /**
+     * Get moves searched in expanded nodes
+     * @return moves count
+     */
+    long getSearchedMoves(){
+        return searchedMoves;
+    }
+
+    /**
+     * Get positions solved by endgame database in current or last search
+     * @return endgame hits
+     */
+    long getEndgameHits(){
+        return endgameHits;
+    }
+}
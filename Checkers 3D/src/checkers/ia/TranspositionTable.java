@@ -0,0 +1,161 @@
+package checkers.ia;
+
+import java.util.Arrays;
+
+/**
+ * Class TranspositionTable
+ * Implements a fixed size hash table of searched positions
+ * stored in two preallocated primitive arrays (keys and data)
+ * Each bucket has two entries: first entry keeps the deepest
+ * search (depth-preferred), second entry is always replaced.
+ * Entries are aged with the search generation, so entries of
+ * previous moves of the same game are kept until replaced
+ * Table is shared by all search threads without locks: each entry
+ * key is saved xor its data, so an entry written at the same time
+ * by two threads (mixed key and data) doesn't match any probe
+ *
+ * Entry data bits:
+ *  0..29 best move, 30..45 score, 46..53 depth, 54..55 bound, 56..63 age
+ *
+ * @author Cristian Tardivo
+ */
+public final class TranspositionTable {
+    // Bound types
+    public static final int UPPER = 1;
+    public static final int LOWER = 2;
+    public static final int EXACT = 3;
+    // Entry size in bytes (key + data)
+    private static final int ENTRY_SIZE = 16;
+    // Max buckets (two entries each, arrays size must fit an int)
+    private static final int MAX_BUCKETS = 1 << 29;
+    // Table
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+    // Current search generation
+    private int age;
+
+    /**
+     * Create a new transposition table
+     * @param sizeMB table size in MB (rounded down to power of two entries,
+     * up to MAX_BUCKETS buckets)
+     */
+    public TranspositionTable(int sizeMB){
+        long entries = Math.max(2, ((long)sizeMB << 20) / ENTRY_SIZE);
+        int buckets = Integer.highestOneBit((int)Math.min(entries / 2, MAX_BUCKETS));
+        keys = new long[buckets * 2];
+        data = new long[buckets * 2];
+        mask = buckets - 1;
+    }
+
+    /**
+     * Start a new search generation
+     * older entries become replaceable but can still be used
+     */
+    public void newSearch(){
+        age = (age + 1) & 0xFF;
+    }
+
+    /**
+     * Clear all entries (new game)
+     */
+    public void clear(){
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+        age = 0;
+    }
+
+    /**
+     * Probe position in table
+     * @param key position key
+     * @return entry data or 0 if not found
+     */
+    public long probe(long key){
+        int index = ((int)key & mask) << 1;
+        long entry = data[index];
+        if(entry != 0 && (keys[index] ^ entry) == key) return entry;
+        entry = data[index + 1];
+        if(entry != 0 && (keys[index + 1] ^ entry) == key) return entry;
+        return 0;
+    }
+
+    /**
+     * Store a search result
+     * @param key position key
+     * @param depth searched depth
+     * @param bound bound type (UPPER, LOWER or EXACT)
+     * @param score position score
+     * @param move best move or Move.NONE
+     */
+    public void store(long key, int depth, int bound, int score, int move){
+        int index = ((int)key & mask) << 1;
+        long first = data[index];
+        // Depth-preferred entry: same position, older search or not deeper
+        if((keys[index] ^ first) != key && first != 0 && getAge(first) == age && getDepth(first) > depth)
+            index++;
+        // Keep previous best move of the same position
+        long old = data[index];
+        if(move == Move.NONE && (keys[index] ^ old) == key)
+            move = getMove(old);
+        long entry = (move & 0x3FFFFFFFL)
+                   | ((long)((score + 32768) & 0xFFFF) << 30)
+                   | ((long)(depth & 0xFF) << 46)
+                   | ((long)bound << 54)
+                   | ((long)age << 56);
+        keys[index] = key ^ entry;
+        data[index] = entry;
+    }
+
+    /**
+     * Get best move of entry
+     * @param entry entry data
+     * @return packed move or Move.NONE
+     */
+    public static int getMove(long entry){
+        return (int)(entry & 0x3FFFFFFF);
+    }
+
+    /**
+     * Get score of entry
+     * @param entry entry data
+     * @return score
+     */
+    public static int getScore(long entry){
+        return (int)((entry >>> 30) & 0xFFFF) - 32768;
+    }
+
+    /**
+     * Get searched depth of entry
+     * @param entry entry data
+     * @return depth
+     */
+    public static int getDepth(long entry){
+        return (int)((entry >>> 46) & 0xFF);
+    }
+
+    /**
+     * Get bound type of entry
+     * @param entry entry data
+     * @return UPPER, LOWER or EXACT
+     */
+    public static int getBound(long entry){
+        return (int)((entry >>> 54) & 3);
+    }
+
+    /**
+     * Get search generation of entry
+     * @param entry entry data
+     * @return age
+     */
+    private static int getAge(long entry){
+        return (int)((entry >>> 56) & 0xFF);
+    }
+
+    /**
+     * Get number of entries
+     * @return table entries
+     */
+    public int getSize(){
+        return keys.length;
+    }
+}
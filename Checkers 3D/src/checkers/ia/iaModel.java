@@ -82,19 +82,11 @@ public class iaModel extends Model implements Cloneable {
      */
     public int evaluate(){
         int value = 0;
-        Point pos = new Point();
-        Board.Cells cell;
+        int red = board.getRed();
+        int black = board.getBlack();
         for (int i = 0; i < 8; i++){
-            for (int j = 0; j < 8; j++){
-                pos.setFirst(i);pos.setSecond(j);
-                cell = getValueAt(pos);
-                if (cell == Board.Cells.RED || cell == Board.Cells.RED_QUEEN){
-                    value -= 80 - (10*(i));
-                }
-                if (cell == Board.Cells.BLACK || cell == Board.Cells.BLACK_QUEEN){
-                    value += (i+1)*10;
-                }
-            }            
+            value -= Integer.bitCount(red & Board.rowMask(i)) * (80 - (10*(i)));
+            value += Integer.bitCount(black & Board.rowMask(i)) * ((i+1)*10);
         }
         value -= (red_count * 60);
         value -= (red_queen_count * 200);
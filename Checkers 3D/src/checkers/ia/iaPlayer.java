@@ -3,13 +3,43 @@ package checkers.ia;
 import checkers.logic.Logic;
 import checkers.model.Model;
 import checkers.common.Settings;
-import java.util.List;
+import java.io.File;
+import java.io.IOException;
 import java.util.Observable;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Class iaPlayer
- * Implements artificial player using min max search with alpha-beta pruning
- * using iaRules and iaModel
+ * Implements artificial player using SearchEngine
+ * (iterative deepening principal variation search, see SearchWorker)
+ * searches run in their own thread over a copy of the game position
+ * (game model is only read when search starts) and notify observers
+ * the best move: list of points of the whole turn (origin and each
+ * eat destination of a chained eat)
+ * Search thread and engine (workers, tables and buffers) are shared
+ * by all iaPlayers and live across moves and games, they are created
+ * again only when Settings search threads or table size change
+ * Search stats are published as JMX MBean (see SearchStats)
+ * Pondering: after each move the expected opponent reply (table best
+ * move) is played over a copy of the position and searched without
+ * time limit while the opponent thinks. If the opponent plays it
+ * (ponderhit) the ponder search goes on as the next move search, with
+ * its tree and table, and ends at its time budget counted from ponder
+ * start; otherwise it's cancelled and a new search starts over the
+ * table filled while pondering
+ * Opening book moves (see OpeningBook, book file in working directory)
+ * are played without search, except in easy level
+ * Endgame database (see EndgameDatabase, files in endgame directory)
+ * positions are probed by searches, and when game material (Model
+ * pieces counters) is in database the exact best move is played
+ * without search (unless draw turns rule may end the game first);
+ * its blocks cache size is set in Settings
+ * Difficult levels set max depth and time budget of each move
  * 
  * @author Cristian Tardivo
  */
@@ -18,143 +48,406 @@ public class iaPlayer extends Observable implements Runnable {
     public enum Difficult {easy,moderate,hard};
     // Max depth on search tree
     private int MAX_TREE_LEVEL = 4;
-    // Time Delay
-    private int delay = 1000;
-    // Game logic associate
-    private Logic logic;
+    // Time budget per move (ms)
+    private int timeBudget = 1000;
+    // Min time between move request and move notification, 2D view pacing (ms)
+    private static final long MIN_MOVE_DELAY = 400;
     // Default game Model
     private Model defaultModel;
-    // Extended Model
-    private iaModel resultModel;
-    // Game "Rules"
-    private iaRules rules;
-    // Search Thread
-    private Thread iaPlayer;
+    // Search position
+    private Position position;
+    // Shared search engine and search thread
+    private static SearchEngine engine;
+    private static ExecutorService executor;
+    // Shared opening book (null if there isn't book file)
+    private static OpeningBook book;
+    private static boolean bookLoaded;
+    // Play opening book moves
+    private boolean useBook = true;
+    // Shared endgame database (null if there isn't database directory)
+    private static EndgameDatabase endgame;
+    private static boolean endgameLoaded;
+    // Search position material is in endgame database
+    private boolean solved;
+    // Book moves random choice
+    private final Random random = new Random();
+    // Search cancellation
+    private final CancelToken token = new CancelToken();
+    // Root moves buffer (result validation)
+    private final int[] rootMoves = new int[MoveGenerator.MAX_MOVES];
+    // Current search
+    private volatile Future<?> search;
     // Search Started
-    private boolean started;
+    private volatile boolean started;
+    // First search of this game (clears engine)
+    private boolean newGame = true;
+    // Move request time, 2D view pacing (ms)
+    private volatile long moveStart;
+    // Pondering enabled
+    private volatile boolean ponder = true;
+    // Ponder search waiting opponent move
+    private boolean pondering;
+    // Ponder search position (expected opponent reply played) and start time
+    private final Position ponderPosition = new Position();
+    private long ponderStart;
+    // Search thread
+    private static volatile Thread searchThread;
     
     /**
      * Creates a new iaPlayer with default logic
      * @param gLogic default game logic
      */
     public iaPlayer(Logic gLogic){
-        logic = gLogic;
         defaultModel = gLogic.getModel();
-        rules = new iaRules(logic);
+        position = new Position();
+        // Prepare engine and thread before first move
+        getEngine();
+        getExecutor();
+    }
+    
+    /**
+     * Get shared search engine
+     * created again if search settings changed
+     * @return search engine
+     */
+    private static synchronized SearchEngine getEngine(){
+        int threads = Math.min(Settings.getSearchThreads(), SearchEngine.MAX_THREADS);
+        int hashSize = Settings.getHashSize();
+        if(engine == null || engine.getThreads() != threads || engine.getHashSize() != hashSize){
+            if(engine != null) engine.shutdown();
+            engine = new SearchEngine(threads, hashSize);
+            engine.setEndgame(getEndgame());
+            SearchStats.getInstance().setEngine(engine);
+        }
+        return engine;
+    }
+    
+    /**
+     * Get shared search thread
+     * @return single thread executor
+     */
+    private static synchronized ExecutorService getExecutor(){
+        if(executor == null){
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory(){
+                @Override
+                public Thread newThread(Runnable task){
+                    Thread thread = new Thread(task);
+                    thread.setName("iaPlayer Thread");
+                    thread.setDaemon(true);
+                    searchThread = thread;
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+    
+    /**
+     * Get shared opening book, file is mapped on first use
+     * @return opening book or null if there isn't book file
+     */
+    private static synchronized OpeningBook getBook(){
+        if(!bookLoaded){
+            bookLoaded = true;
+            File file = new File(OpeningBook.FILE_NAME);
+            if(file.exists()){
+                try {
+                    book = OpeningBook.open(file);
+                } catch (IOException ex){
+                    System.err.println("iaPlayer: can't open opening book " + ex.getMessage());
+                }
+            }
+        }
+        return book;
+    }
+    
+    /**
+     * Get shared endgame database, files are mapped on first use
+     * and blocks cache is resized to Settings cache size
+     * @return endgame database or null if there isn't database directory
+     */
+    private static synchronized EndgameDatabase getEndgame(){
+        if(!endgameLoaded){
+            endgameLoaded = true;
+            File directory = new File(EndgameDatabase.DIRECTORY);
+            if(directory.isDirectory()){
+                try {
+                    endgame = EndgameDatabase.open(directory, 0);
+                } catch (IOException ex){
+                    System.err.println("iaPlayer: can't open endgame database " + ex.getMessage());
+                }
+            }
+        }
+        if(endgame != null)
+            endgame.setCacheSize(Settings.getEndgameCacheSize() * 1024L * 1024L);
+        return endgame;
+    }
+    
+    /**
+     * Checks if game material is in endgame database
+     * @param database endgame database
+     * @return game position can be solved or not
+     */
+    private boolean isSolved(EndgameDatabase database){
+        int rm = defaultModel.getRedCount(), rq = defaultModel.getRedQueenCount();
+        int bm = defaultModel.getBlackCount(), bq = defaultModel.getBlackQueenCount();
+        return rm + rq + bm + bq <= database.getMaxPieces() && database.contains(rm, rq, bm, bq);
     }
     
     /**
      * Start Thread to compute next movement
+     * current game position is copied in caller thread
+     * continues ponder search if it's the pondered position
      */
     public void computeNextMove(){
-        iaPlayer = new Thread(this);
-        iaPlayer.setName("iaPlayer Thread");
+        moveStart = System.currentTimeMillis();
+        position.load(defaultModel);
+        EndgameDatabase database = getEndgame();
+        solved = database != null && isSolved(database);
+        boolean miss;
+        synchronized(this){
+            // Ponderhit: ponder search goes on
+            if(pondering && samePosition(position, ponderPosition)){
+                pondering = false;
+                started = true;
+                token.setDeadline(Math.max(ponderStart + timeBudget, moveStart));
+                notifyAll();
+                return;
+            }
+            // Ponder miss: cancel ponder search (table is kept)
+            miss = pondering;
+            if(miss){
+                started = false;
+                pondering = false;
+                token.cancel();
+                notifyAll();
+            }
+        }
+        if(miss) waitSearch();
+        token.reset();
         started = true;
-        resultModel = null;
-        iaPlayer.start();
+        search = getExecutor().submit(this);
     }
     
     /**
-     * Stop current search
+     * Stop current search (and pondering)
+     * search is cancelled and ends in a few milliseconds
+     * only waits it if called outside search thread
      */
     public void stop(){
         started = false;
+        synchronized(this){
+            pondering = false;
+            token.cancel();
+            notifyAll();
+        }
+        if(Thread.currentThread() != searchThread)
+            waitSearch();
+    }
+
+    /**
+     * Wait current search end
+     */
+    private void waitSearch(){
+        Future<?> current = search;
+        if(current == null) return;
         try {
-            iaPlayer.join();
-            iaPlayer.stop();
+            current.get();
         } catch (InterruptedException ex){
             System.err.println("Can't Stop iaPlayer Thread");
+        } catch (ExecutionException ex){
+            System.err.println("iaPlayer: search failed " + ex.getCause());
         }
-        
+    }
+
+    /**
+     * Enable or disable pondering
+     * @param status pondering enabled
+     */
+    public void setPonder(boolean status){
+        ponder = status;
     }
     
     /**
      * Thread run Method
-     * performs min max search
+     * performs iterative deepening search
+     * or ponder search until opponent moves
      */
     @Override
     public void run(){
-        // Extends default model to iaModel
-        iaModel model = new iaModel(defaultModel);
-        logic.setModel(model);
-        // Search best move node
-        minMaxAB(model,MAX_TREE_LEVEL, model.minVal(), model.maxVal());
-        // Reset logic to default model
-        logic.setModel(defaultModel);
-        // Time Delay
-        if(!Settings.is3DView())
-            try {Thread.sleep(delay);} catch (InterruptedException ex){}
+        boolean ponderSearch;
+        synchronized(this){
+            ponderSearch = pondering;
+        }
+        SearchEngine searchEngine = getEngine();
+        int resultMove;
+        if(ponderSearch){
+            // Search expected position without time limit
+            resultMove = searchEngine.think(ponderPosition, MAX_TREE_LEVEL, Long.MAX_VALUE / 2, token);
+            // Wait opponent move: ponderhit or miss
+            synchronized(this){
+                while(pondering && !token.isCancelled()){
+                    try {
+                        wait();
+                    } catch (InterruptedException ex){
+                        pondering = false;
+                    }
+                }
+                pondering = false;
+                if(token.isCancelled()) return;
+            }
+            SearchStats.getInstance().record(searchEngine);
+        } else {
+            // New game, forget previous game tables
+            if(newGame){
+                searchEngine.clear();
+                newGame = false;
+            }
+            // Opening book move, no search needed
+            OpeningBook openingBook = useBook? getBook() : null;
+            resultMove = (openingBook == null)? Move.NONE : openingBook.probe(position, random);
+            // Solved endgame move, no search needed
+            if(resultMove == Move.NONE && solved)
+                resultMove = getEndgame().bestMove(position);
+            // Search best move
+            if(resultMove == Move.NONE){
+                resultMove = searchEngine.think(position, MAX_TREE_LEVEL, timeBudget, token);
+                SearchStats.getInstance().record(searchEngine);
+            }
+        }
+        // Time Delay, 2D view shows moves at least MIN_MOVE_DELAY after
+        // move request (book, endgame and ponderhit moves are instant)
+        long wait = moveStart + MIN_MOVE_DELAY - System.currentTimeMillis();
+        if(!Settings.is3DView() && wait > 0)
+            try {token.await(wait);} catch (InterruptedException ex){}
         // Inform changes: Return best move
         if(started){
-            // Checks for valid resultModel
-            if(resultModel == null){
-                System.err.println("iaPlayer: result model null");
+            // Checks for valid result move
+            if(resultMove == Move.NONE){
+                System.err.println("iaPlayer: result move null");
                 return;
             }
             // Checks for valid move
-            if(!logic.isValidMove(resultModel.getMove().getFirst(), resultModel.getMove().getSecond())){
-                System.err.println("iaPlayer: invalid move in default model");
+            if(!isValidMove(resultMove)){
+                System.err.println("iaPlayer: invalid move in search position");
                 return;
             }
-            // Valid Move, notifies observer
+            // Start pondering before observers get the move
+            startPonder(searchEngine, resultMove);
+            // Valid Move, notifies observer the move path
             setChanged();
-            notifyObservers(resultModel.getMove());
+            notifyObservers(Move.toPath(position, resultMove));
         }
     }
     
     /**
-     * min Max search tree
-     * @param model  Current model in the search
-     * @param depth  Max depth in the search tree
-     * @param alpha  Current alpha value
-     * @param beta   Current beta value
-     * @return       Current node valoration
-     */
-    private int minMaxAB(iaModel model, int depth, int alpha, int beta){
-        // if game end for current player or can't explore more nodes
-        if(depth == 0 || logic.gameEnd()){
-            return model.evaluate();
-        } else {
-            // search best move
-            List<iaModel> succesors = rules.applyRules(model.clone());
-            for(iaModel nextModel : succesors){
-                // init resultModel
-                if(resultModel == null) resultModel = nextModel;
-                // do search
-                int value = minMaxAB(nextModel, depth - 1, alpha, beta);
-                // select best succesor
-                if(model.isMax()){
-                    if(value > alpha){
-                        alpha = value;
-                        if(depth ==  MAX_TREE_LEVEL) resultModel = nextModel;
-                    }
-                    if(beta <= alpha) break; // beta cut-off
-                } else { // model.isMin()
-                    if(value < beta){
-                        beta = value;
-                        if(depth == MAX_TREE_LEVEL) resultModel = nextModel;
-                    }
-                    if(beta <= alpha) break; // alpha cut-off
-                }
-            }
-            // return result
-            if(model.isMax())
-                return alpha;
-            else
-                return beta;
+     * Start a ponder search of expected opponent reply
+     * @param searchEngine search engine
+     * @param move best move of search position
+     */
+    private void startPonder(SearchEngine searchEngine, int move){
+        if(!ponder) return;
+        ponderPosition.copy(position);
+        ponderPosition.makeMove(move);
+        // Expected opponent reply
+        int reply = searchEngine.getTableMove(ponderPosition);
+        if(reply == Move.NONE) return;
+        ponderPosition.makeMove(reply);
+        if(!ponderPosition.hasMoves()) return;
+        // clear undo stack
+        ponderPosition.copy(ponderPosition);
+        synchronized(this){
+            if(token.isCancelled()) return;
+            token.setDeadline(Long.MAX_VALUE);
+            pondering = true;
+            ponderStart = System.currentTimeMillis();
+        }
+        search = getExecutor().submit(this);
+    }
+
+    /**
+     * Checks if two positions are equal
+     * @param a position
+     * @param b position
+     * @return equal or not
+     */
+    private static boolean samePosition(Position a, Position b){
+        return a.getRed() == b.getRed() && a.getBlack() == b.getBlack() && a.getQueens() == b.getQueens()
+               && a.isRedTurn() == b.isRedTurn() && a.getCheckSquare() == b.getCheckSquare();
+    }
+
+    /**
+     * Checks if a move is valid in search position
+     * @param move packed move
+     * @return valid or invalid
+     */
+    private boolean isValidMove(int move){
+        int count = position.generateMoves(rootMoves, 0);
+        for(int i = 0; i < count; i++){
+            if(rootMoves[i] == move) return true;
         }
+        return false;
+    }
+    
+    /**
+     * Set random seed used to choose between equal root moves
+     * and between opening book moves
+     * @param seed random seed
+     */
+    public void setSeed(long seed){
+        getEngine().setSeed(seed);
+        random.setSeed(seed);
+    }
+
+    /**
+     * Get transposition table hit rate of last search
+     * @return hits / probes [0..1]
+     */
+    public double getHashHitRate(){
+        return getEngine().getHashHitRate();
+    }
+
+    /**
+     * Get score of last search best move
+     * for player to move, positive is better
+     * @return score
+     */
+    public int getScore(){
+        return getEngine().getScore();
+    }
+
+    /**
+     * Get searched nodes in last search
+     * @return nodes count
+     */
+    public long getNodes(){
+        return getEngine().getNodes();
+    }
+
+    /**
+     * Set search limits directly
+     * @param depth max depth [1..SearchEngine.MAX_DEPTH]
+     * @param time time budget per move (ms)
+     */
+    public void setLimits(int depth, int time){
+        MAX_TREE_LEVEL = Math.max(1, Math.min(depth, SearchEngine.MAX_DEPTH));
+        timeBudget = time;
     }
 
     /**
-     * Set maximum depth of the search tree
+     * Set maximum depth and time budget of the search
+     * easy and moderate are limited by depth (strength target)
+     * hard searches as deep as its time budget allows
+     * easy doesn't play opening book moves
      * @param level difficult level
      */
     public void setDifficultLevel(Difficult level){
+        useBook = (level != Difficult.easy);
         switch (level){
-            case easy: MAX_TREE_LEVEL = 3;delay = 1200;break;
-            case moderate: MAX_TREE_LEVEL = 6;delay = 1000;break;
-            case hard: MAX_TREE_LEVEL = 8;delay = 800;break;
-            default: MAX_TREE_LEVEL = 4;break;
+            case easy: MAX_TREE_LEVEL = 3;timeBudget = 1000;break;
+            case moderate: MAX_TREE_LEVEL = 6;timeBudget = 1000;break;
+            case hard: MAX_TREE_LEVEL = SearchEngine.MAX_DEPTH;timeBudget = 1500;break;
+            default: MAX_TREE_LEVEL = 4;timeBudget = 1000;break;
         }
     }
 }
@@ -1,10 +1,9 @@
 package checkers.ia;
 
-import checkers.logic.Logic;
-import checkers.model.Player.Color;
+import checkers.logic.Rules;
+import checkers.model.Board;
 import checkers.common.Pair;
 import checkers.common.Point;
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -12,67 +11,43 @@ import java.util.List;
  * Class iaRules
  * Implemens ia move rules
  * allows to make moves and get list of resultant models
+ * uses stateless Rules, each thread needs its own iaRules
+ * (moves buffer) but models are never shared
  * 
  * @author Cristian Tardivo
  */
 public class iaRules {
-    // Current game logic
-    private Logic gameLogic;
+    // Generated moves buffer
+    private final int[] moves = new int[MoveGenerator.MAX_MOVES];
     
     /**
      * Create new iaRules for player red and black
-     * @param logic default game logic
      */
-    public iaRules(Logic logic){
-        gameLogic = logic;
+    public iaRules(){
     }
     
     /**
      * Applies rules to current model and retrieves a list of models modified
-     * update game logic with each model,
-     * ¡use carefully , avoid lost original model!
+     * current model isn't changed
      * @param current game model to apply rules
      * @return list of models modified
      */
     public List<iaModel> applyRules(iaModel current){
-        // Set Current Model to game Logic
-        gameLogic.setModel(current);
-        // Get current player pieces
+        // Get valid moves in current State (Model)
         // red player: Min  black player: Max
-        List<Point> pieces;
+        Board board = current.getBoard();
+        Point check = current.getCheckPiece();
+        int checkSquare = (check == null)? -1 : Board.toSquare(check.getFirst(), check.getSecond());
+        int count;
         if(current.isMin())
-           pieces = gameLogic.getPieces(Color.red);
+            count = MoveGenerator.generateSteps(board.getRed(), board.getBlack(), board.getQueens(), true, checkSquare, moves, 0);
         else
-           pieces = gameLogic.getPieces(Color.black);
-        // Get valid moves in current State (Model)
-        List<Pair<Point,Point>> validMoves = new LinkedList<>();
-        for(Point pos : pieces){
-            // Simple Moves
-            Point upLeft = new Point(pos.getFirst() - 1, pos.getSecond() - 1);
-            Point upRight = new Point(pos.getFirst() - 1, pos.getSecond() + 1);
-            Point downLeft = new Point(pos.getFirst() + 1, pos.getSecond() - 1);
-            Point downRight = new Point(pos.getFirst() + 1, pos.getSecond() + 1);
-            if(gameLogic.isValidMove(pos,upLeft)) validMoves.add(new Pair(pos,upLeft));
-            if(gameLogic.isValidMove(pos,upRight)) validMoves.add(new Pair(pos,upRight));
-            if(gameLogic.isValidMove(pos,downLeft)) validMoves.add(new Pair(pos,downLeft));
-            if(gameLogic.isValidMove(pos,downRight)) validMoves.add(new Pair(pos,downRight));
-            // Eats Moves
-            Point upLeft2 = new Point(pos.getFirst() - 2, pos.getSecond() - 2);
-            Point upRight2 = new Point(pos.getFirst() - 2, pos.getSecond() + 2);
-            Point downLeft2 = new Point(pos.getFirst() + 2, pos.getSecond() - 2);
-            Point downRight2 = new Point(pos.getFirst() + 2, pos.getSecond() + 2);
-            if(gameLogic.isValidMove(pos,upLeft2)) validMoves.add(new Pair(pos,upLeft2));
-            if(gameLogic.isValidMove(pos,upRight2)) validMoves.add(new Pair(pos,upRight2));
-            if(gameLogic.isValidMove(pos,downLeft2)) validMoves.add(new Pair(pos,downLeft2));
-            if(gameLogic.isValidMove(pos,downRight2)) validMoves.add(new Pair(pos,downRight2));
-        }
+            count = MoveGenerator.generateSteps(board.getBlack(), board.getRed(), board.getQueens(), false, checkSquare, moves, 0);
         // Apply Moves to current Model and Clone
         List<iaModel> result = new LinkedList<>();
-        for(Pair pair : validMoves){
-            result.add(applyMove(current, pair));
+        for(int i = 0; i < count; i++){
+            result.add(applyMove(current, Move.toPair(moves[i])));
         }
-        // Add random value
-        Collections.shuffle(result);
         // Returns list of current model clones with movements applied
         return result;
     }
@@ -86,11 +61,9 @@ public class iaRules {
     private iaModel applyMove(iaModel model,Pair<Point,Point> pair){
         // Clone current model
         iaModel clon = model.clone();
-        // Update logic with clon
-        gameLogic.setModel(clon);
         // Apply move and change turn if necessary
-        if(!gameLogic.movePiece(pair.getFirst(),pair.getSecond()))
-            gameLogic.changeTurn();
+        if(!Rules.movePiece(clon, pair.getFirst(), pair.getSecond()))
+            Rules.changeTurn(clon);
         // Save Move info
         clon.setMove(pair);
         // Returns updated clon
@@ -10,6 +10,8 @@ import checkers.network.DNetwork;
 import checkers.common.Cronometer;
 import checkers.common.Pair;
 import checkers.common.Point;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.ResourceBundle;
@@ -19,11 +21,17 @@ import java.util.ResourceBundle;
  * responds to change in view like request to move using
  * game logic to verify his validity and also responds
  * to changes in the model
+ * IA and remote moves are whole turns (paths: origin and each eat
+ * destination of a chained eat), replayed step by step in the model
+ * and the view (2D view steps are delayed STEP_DELAY); local player
+ * turns are sent to remote rival as paths
  * 
  * @author Cristian Tardivo
  */
 public class Controller implements Observer {
     private static final ResourceBundle lang = ResourceBundle.getBundle("checkers/common/lang");
+    // Delay between steps of a path in 2D view (milliseconds)
+    private static final long STEP_DELAY = 400;
     private iaPlayer iaPlayer;
     private DNetwork network;
     private Logic logic;
@@ -32,6 +40,8 @@ public class Controller implements Observer {
     // Current Movement points
     private Point start;
     private Point end;
+    // Current local turn path (sent to remote rival when turn ends)
+    private final List<Point> turnPath = new LinkedList<>();
     
     /**
      * Create a new game Controller
@@ -72,6 +82,8 @@ public class Controller implements Observer {
         if(model.getPlayerA().isIA() || model.getPlayerB().isIA()){
             iaPlayer = new iaPlayer(logic);
             iaPlayer.setDifficultLevel(Settings.getDifficult());
+            // Ponder on rival time only if rival isn't IA too
+            iaPlayer.setPonder(!(model.getPlayerA().isIA() && model.getPlayerB().isIA()));
             iaPlayer.addObserver(this);
         }
         // First Player IA Move
@@ -129,6 +141,7 @@ public class Controller implements Observer {
             iaPlayer.stop();
             iaPlayer = null;
         }
+        turnPath.clear();
         // Global stop
         view.enableInteraction(false);
         view.enableChat(false);
@@ -145,6 +158,8 @@ public class Controller implements Observer {
      */
     private void endGame(){
         if(network != null) network.closeConnection();
+        // Stop iaPlayer pondering
+        if(iaPlayer != null) iaPlayer.stop();
         view.enableInteraction(false);
         view.endGame(logic.getWinner(),model.getPlayerA(),model.getPlayerB());
         model.stopGame();
@@ -179,10 +194,17 @@ public class Controller implements Observer {
         } else {
             // internal PvsX move
             if(logic.isValidMove(orig,dest)){
-                // if rival player is remote, send the valid move
-                if(model.getRivalPlayer().isRemote())
-                    network.sendMove(orig,dest);
-                nextMove(!logic.movePiece(orig,dest));
+                if(turnPath.isEmpty())
+                    turnPath.add(orig);
+                turnPath.add(dest);
+                boolean continues = logic.movePiece(orig,dest);
+                if(!continues){
+                    // if rival player is remote, send the whole turn
+                    if(model.getRivalPlayer().isRemote())
+                        network.sendPath(turnPath);
+                    turnPath.clear();
+                }
+                nextMove(!continues);
             } else {
                 view.clearSelection(orig,dest);
                 view.enableInteraction(true);
@@ -190,6 +212,42 @@ public class Controller implements Observer {
         }
     }
     
+    /**
+     * Computes a whole turn move (already validated) step by step
+     * each step is shown by the view like a single move
+     * (2D view has no animations, so steps are delayed)
+     * @param path origin and each step destination
+     */
+    private void movePath(List<Point> path){
+        boolean continues = false;
+        for(int i = 1; i < path.size(); i++){
+            if(i > 1 && !Settings.is3DView())
+                try {Thread.sleep(STEP_DELAY);} catch (InterruptedException ex){}
+            // Save movements points for others commands
+            start = path.get(i - 1);
+            end = path.get(i);
+            continues = logic.movePiece(start,end);
+        }
+        // Clear last move points
+        start = end = null;
+        nextMove(!continues);
+    }
+    
+    /**
+     * Get a notified move path checking its elements
+     * @param list notified list
+     * @return points path or null if an element isn't a point
+     */
+    private static List<Point> toPath(List<?> list){
+        List<Point> path = new LinkedList<>();
+        for(Object point : list){
+            if(!(point instanceof Point))
+                return null;
+            path.add((Point)point);
+        }
+        return path;
+    }
+    
     /**
      * Computes the next movement in game
      * @param change if change or not the turn
@@ -339,7 +397,19 @@ public class Controller implements Observer {
                 network.sendMessage(text, name, color);
             }
         }
-        // Local Move Point Command (Player or IA)
+        // IA Move Path Command (whole turn)
+        if(arg instanceof List){
+            List<Point> path = toPath((List<?>)arg);
+            if(path == null){
+                System.err.println("Controller: invalid move path");
+                return;
+            }
+            // Disable view interaction
+            view.enableInteraction(false);
+            movePath(path);
+            return;
+        }
+        // Local Move Point Command (Player)
         if(arg instanceof Pair){
             // Save movements points for others commands
             start = (Point)(((Pair)arg).getFirst());
@@ -356,15 +426,13 @@ public class Controller implements Observer {
         if(arg instanceof DMessage){
            DMessage message = (DMessage) arg;
            String command = message.getCommand();
-           // Network Move
-           if(command.equals("REMOTE_MOVE")){               
-                // Save movements points for others commands
-                start = new Point(((int[])message.getData())[0],((int[])message.getData())[1]);
-                end = new Point(((int[])message.getData())[2],((int[])message.getData())[3]);
-                // Call Controller Move
-                move(start,end);
-                // Clear last move points
-                start = end = null;
+           // Network Move (whole turn path: row, col of each point)
+           if(command.equals("REMOTE_PATH")){
+                int[] data = (int[])message.getData();
+                List<Point> path = new LinkedList<>();
+                for(int i = 0; i + 1 < data.length; i += 2)
+                    path.add(new Point(data[i],data[i + 1]));
+                movePath(path);
                 return;
            }
            // Get Server Name
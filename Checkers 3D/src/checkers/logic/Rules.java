@@ -0,0 +1,300 @@
+package checkers.logic;
+
+import checkers.ia.Move;
+import checkers.ia.MoveGenerator;
+import checkers.model.Board;
+import checkers.model.Board.Cells;
+import checkers.model.Model;
+import checkers.common.Pair;
+import checkers.common.Point;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Class Rules
+ * Implements stateless Checkers rules
+ * every method takes the position (board, player to move and
+ * chained eat piece) or the model to change as argument and keeps
+ * no state, so many threads can generate and validate moves at the
+ * same time (ia search, analysis, view validation) without sharing
+ * a Logic or touching the game model
+ *
+ * Same rules of Logic: eats are obligatory, chained eats continue
+ * with the same piece, queens move in any diagonal direction
+ *
+ * @author Cristian Tardivo
+ */
+public final class Rules {
+    // Moves buffer of each thread
+    private static final ThreadLocal<int[]> BUFFERS = new ThreadLocal<int[]>(){
+        @Override
+        protected int[] initialValue(){
+            return new int[MoveGenerator.MAX_MOVES];
+        }
+    };
+
+    // No instances
+    private Rules(){}
+
+    /************************/
+    /*** Position Methods ***/
+    /************************/
+
+    /**
+     * Checks if a movement is valid in model current position
+     * @param model model to check (not changed)
+     * @param orig start point of movement
+     * @param dest end point of movement
+     * @return valid or invalid
+     */
+    public static boolean isValidMove(Model model, Point orig, Point dest){
+        return isValidMove(model.getBoard(), model.getCurrentPlayer().isRed(), model.getCheckPiece(), orig, dest);
+    }
+
+    /**
+     * Checks if a movement is valid in a position
+     * @param board position board
+     * @param red red player moves
+     * @param check piece that must continue eating or null
+     * @param orig start point of movement
+     * @param dest end point of movement
+     * @return valid or invalid
+     */
+    public static boolean isValidMove(Board board, boolean red, Point check, Point orig, Point dest){
+        int from = toSquare(orig);
+        int to = toSquare(dest);
+        if(from < 0 || to < 0) return false;
+        int checkSquare = (check == null)? -1 : toSquare(check);
+        if(red)
+            return MoveGenerator.isLegalStep(board.getRed(), board.getBlack(), board.getQueens(), true, checkSquare, from, to);
+        return MoveGenerator.isLegalStep(board.getBlack(), board.getRed(), board.getQueens(), false, checkSquare, from, to);
+    }
+
+    /**
+     * Retrieves all valid movements in a position
+     * @param board position board
+     * @param red red player moves
+     * @param check piece that must continue eating or null
+     * @return list of movements: origin, destiny
+     */
+    public static List<Pair<Point,Point>> getMoves(Board board, boolean red, Point check){
+        int[] moves = BUFFERS.get();
+        int count = generateMoves(board, red, check, moves);
+        List<Pair<Point,Point>> result = new LinkedList<>();
+        for(int i = 0; i < count; i++)
+            result.add(Move.toPair(moves[i]));
+        return result;
+    }
+
+    /**
+     * Checks if a player has any movement
+     * @param board position board
+     * @param red red player
+     * @return has or hasn't movements
+     */
+    public static boolean hasMoves(Board board, boolean red){
+        return red ? MoveGenerator.hasMoves(board.getRed(), board.getBlack(), board.getQueens(), true)
+                   : MoveGenerator.hasMoves(board.getBlack(), board.getRed(), board.getQueens(), false);
+    }
+
+    /**
+     * Checks if a model game is a draw: current turn position repeated
+     * Model.DRAW_REPETITIONS times or Model.DRAW_TURNS turns without
+     * eats or men moves
+     * @param model model to check (not changed)
+     * @return draw or not
+     */
+    public static boolean isDraw(Model model){
+        return model.getReversibleTurns() >= Model.DRAW_TURNS
+               || model.getRepetitions() >= Model.DRAW_REPETITIONS - 1;
+    }
+
+    /**
+     * Check if a piece can eats a rival piece from their place
+     * @param board position board
+     * @param piece piece to check
+     * @return can or can't eats
+     */
+    public static boolean canEat(Board board, Point piece){
+        int square = toSquare(piece);
+        if(square < 0) return false;
+        if((board.getRed() & (1 << square)) != 0)
+            return MoveGenerator.canCapture(board.getRed(), board.getBlack(), board.getQueens(), true, square);
+        if((board.getBlack() & (1 << square)) != 0)
+            return MoveGenerator.canCapture(board.getBlack(), board.getRed(), board.getQueens(), false, square);
+        return false;
+    }
+
+    /**
+     * Retrieves all piece positions of a player
+     * @param board position board
+     * @param red red player
+     * @return linked list of pieces positions
+     */
+    public static List<Point> getPieces(Board board, boolean red){
+        List<Point> result = new LinkedList<>();
+        int pieces = red ? board.getRed() : board.getBlack();
+        for(; pieces != 0; pieces &= pieces - 1){
+            int square = Integer.numberOfTrailingZeros(pieces);
+            result.add(new Point(Board.row(square), Board.col(square)));
+        }
+        return result;
+    }
+
+    /**
+     * Compute Mid Point between 2 Points
+     * @param first First Point
+     * @param second Second Point
+     * @return Middle Point
+     */
+    public static Point getMidPoint(Point first, Point second){
+        return new Point((first.getFirst() + second.getFirst()) / 2,
+                         (first.getSecond() + second.getSecond()) / 2);
+    }
+
+    /*****************************/
+    /*** Model Changes Methods ***/
+    /*****************************/
+
+    /**
+     * Moves a piece between positions of a model
+     * @param model model to change
+     * @param orig Origin Piece
+     * @param dest Destination Empty valid place
+     * @return if current player can move again (enchained eats)
+     */
+    public static boolean movePiece(Model model, Point orig, Point dest){
+        Board board = model.getBoard();
+        // Move information
+        boolean eat = moveEats(board, orig, dest);
+        boolean queen = moveMakeQueen(board, orig, dest);
+        // Move piece
+        model.swapValues(orig,dest);
+        model.getCurrentPlayer().setMovementCount(+1);
+        // If move eats rivals piece
+        if(eat)
+            eatPiece(model, getMidPoint(orig,dest));
+        // If moves make a new queen
+        if(queen)
+            toQueen(model, dest);
+        // If eat and can eats again from destiny position then move continues
+        if(queen || !eat) return false;
+        boolean result = canEat(board, dest);
+        // if move continues, next move has to start with the same piece
+        model.setCheckPiece((result)?dest:null);
+        return result;
+    }
+
+    /**
+     * Eats a piece in position of a model
+     * @param model model to change
+     * @param pos Piece to eat
+     */
+    public static void eatPiece(Model model, Point pos){
+        int mask = Board.mask(pos);
+        boolean queen = (model.getBoard().getQueens() & mask) != 0;
+        // Update Board Numbers
+        if((model.getBoard().getRed() & mask) != 0){
+            if(queen)
+               model.setRedQueenCount(-1);
+            else
+               model.setRedCount(-1);
+        } else {
+            if(queen)
+                model.setBlackQueenCount(-1);
+            else
+                model.setBlackCount(-1);
+        }
+        // Update Rival Piece Number
+        model.getRivalPlayer().setPieceNumber(-1);
+        // Update Current Player Eated Pieces
+        model.getCurrentPlayer().setPieceEated(+1);
+        // Make Eat
+        model.setValueAt(pos,Cells.BLACK_FLOOR);
+    }
+
+    /**
+     * convert into queen piece in position of a model
+     * @param model model to change
+     * @param pos Piece to convert to queen
+     */
+    public static void toQueen(Model model, Point pos){
+        model.getCurrentPlayer().setQueenNumber(+1);
+        if((model.getBoard().getBlack() & Board.mask(pos)) != 0){
+            model.setValueAt(pos,Cells.BLACK_QUEEN);
+            model.setBlackQueenCount(+1);
+            model.setBlackCount(-1);
+        } else {
+            model.setValueAt(pos,Cells.RED_QUEEN);
+            model.setRedQueenCount(+1);
+            model.setRedCount(-1);
+        }
+    }
+
+    /**
+     * Change current player of a model to rival
+     * @param model model to change
+     */
+    public static void changeTurn(Model model){
+        model.setCheckPiece(null);
+        model.swapPlayers();
+    }
+
+    /***********************/
+    /*** Private Methods ***/
+    /***********************/
+
+    /**
+     * Generates valid moves (game steps, one eat of a chained eat) of a position
+     * @param board position board
+     * @param red red player moves
+     * @param check piece that must continue eating or null
+     * @param moves buffer to write moves
+     * @return number of moves
+     */
+    private static int generateMoves(Board board, boolean red, Point check, int[] moves){
+        int checkSquare = (check == null)? -1 : toSquare(check);
+        if(red)
+            return MoveGenerator.generateSteps(board.getRed(), board.getBlack(), board.getQueens(), true, checkSquare, moves, 0);
+        return MoveGenerator.generateSteps(board.getBlack(), board.getRed(), board.getQueens(), false, checkSquare, moves, 0);
+    }
+
+    /**
+     * Check if movement between 2 points eats a rivals piece
+     * @param board position board
+     * @param orig Origin point
+     * @param dest Destination point
+     * @return movement eats or not eats
+     */
+    private static boolean moveEats(Board board, Point orig, Point dest){
+        if(Math.abs(orig.getSecond() - dest.getSecond()) != 2) return false;
+        int from = Board.mask(orig);
+        int mid = Board.mask(getMidPoint(orig,dest));
+        return (((board.getRed() & from) != 0 && (board.getBlack() & mid) != 0) ||
+                ((board.getBlack() & from) != 0 && (board.getRed() & mid) != 0)) &&
+               (board.getEmpty() & Board.mask(dest)) != 0;
+    }
+
+    /**
+     * Check if movement between 2 points make a new queen
+     * @param board position board
+     * @param orig Origin point
+     * @param dest Destination point
+     * @return movements makes or not makes a new queen
+     */
+    private static boolean moveMakeQueen(Board board, Point orig, Point dest){
+        int from = Board.mask(orig);
+        if((board.getQueens() & from) != 0) return false;
+        return ((board.getBlack() & from) != 0 && dest.getFirst() == 7) ||
+               ((board.getRed() & from) != 0 && dest.getFirst() == 0);
+    }
+
+    /**
+     * Get board square of a position
+     * @param pos board position
+     * @return square or -1 for light or out of board positions
+     */
+    private static int toSquare(Point pos){
+        return Board.toSquare(pos.getFirst(), pos.getSecond());
+    }
+}
@@ -0,0 +1,441 @@
+package checkers.main;
+
+import checkers.common.Settings;
+import checkers.ia.CancelToken;
+import checkers.ia.Move;
+import checkers.ia.MoveGenerator;
+import checkers.ia.Position;
+import checkers.ia.SearchEngine;
+import checkers.model.Board;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Class TextEngine
+ * Headless engine main: reads text commands from standard input and
+ * writes engine answers to standard output (one line each), so
+ * external programs (GUIs, tournament managers, scripts) can play
+ * against the search engine without the game view
+ * Searches run in their own thread, commands are read while searching
+ *
+ * Moves are "from-to" square numbers (0..31, see Board), capture
+ * moves are whole chained eats "from x square x ... x to" with the
+ * destination square of each eat, like "9x18x27"
+ *
+ * Commands:
+ *   id                          answers "id name ..." and "id author ..."
+ *   isready                     answers "readyok"
+ *   new                         new game (initial position, clear engine)
+ *   setoption threads|hash N    search threads / table size (1..1024 MB)
+ *   position startpos|text <position> [moves m1 m2 ...]
+ *                               set position (see Position.parse)
+ *   go [depth N] [movetime MS] [rtime MS btime MS rinc MS binc MS
+ *      movestogo N] [infinite] [ponder]
+ *                               search current position (without
+ *                               depth or time limits it's infinite)
+ *   stop                        end current search
+ *   ponderhit                   opponent played the pondered move,
+ *                               ponder search becomes a normal search
+ *   print                       print current position
+ *   quit                        end engine
+ *
+ * Answers while searching:
+ *   info depth D nodes N nps N time MS (every second)
+ *   info depth D score S nodes N nps N time MS (search end)
+ *   bestmove <move> | bestmove none
+ * An infinite or ponder search doesn't answer bestmove until stop
+ * or ponderhit, even if search ends before
+ * At input end (without quit) a running search ends at its limits and
+ * answers bestmove (infinite and ponder searches are stopped), so
+ * piped command scripts can end with go
+ *
+ * @author Cristian Tardivo
+ */
+public class TextEngine {
+    // Engine identification
+    private static final String NAME = "Checkers 3D";
+    private static final String AUTHOR = "Cristian Tardivo";
+    // Time controls: default moves to go and time kept for communication (ms)
+    private static final int MOVES_TO_GO = 30;
+    private static final long TIME_MARGIN = 50;
+    // Max table size (MB), same range of Settings
+    private static final int MAX_HASH_SIZE = 1024;
+    // Info lines interval (ms)
+    private static final long INFO_INTERVAL = 1000;
+    // Search engine
+    private SearchEngine engine;
+    // Current position, undo stack is always empty
+    private final Position position = new Position();
+    // Current search
+    private final CancelToken token = new CancelToken();
+    private Thread searcher;
+    // Current search waits stop or ponderhit before bestmove
+    private boolean pondering;
+    private boolean infinite;
+    // Time budget of current ponder search after ponderhit (ms)
+    private long ponderBudget;
+    // Info lines timer
+    private final Timer timer = new Timer("TextEngine Info", true);
+
+    /**
+     * Create a new text engine (settings threads and table size)
+     */
+    public TextEngine(){
+        int threads = Math.min(Settings.getSearchThreads(), SearchEngine.MAX_THREADS);
+        engine = new SearchEngine(threads, Settings.getHashSize());
+    }
+
+    public static void main(String[] args) throws IOException {
+        new TextEngine().run(new BufferedReader(new InputStreamReader(System.in)));
+    }
+
+    /**
+     * Read and execute commands until quit or input end
+     * @param input commands input
+     * @throws IOException if input can't be read
+     */
+    public void run(BufferedReader input) throws IOException {
+        String line;
+        boolean quit = false;
+        while(!quit && (line = input.readLine()) != null){
+            String[] fields = line.trim().split("\\s+");
+            if(fields[0].isEmpty()) continue;
+            try {
+                quit = !execute(fields);
+            } catch (IllegalArgumentException ex){
+                System.err.println("TextEngine: " + ex.getMessage());
+            }
+        }
+        // input end: let current search answer its bestmove
+        if(!quit) finishSearch();
+        stopSearch();
+        timer.cancel();
+        engine.shutdown();
+    }
+
+    /**
+     * Execute a command
+     * @param fields command name and arguments
+     * @return continue reading commands or not (quit)
+     * @throws IllegalArgumentException if command or its arguments aren't valid
+     */
+    private boolean execute(String[] fields){
+        switch(fields[0]){
+            case "id":
+                send("id name " + NAME);
+                send("id author " + AUTHOR);
+                break;
+            case "isready":
+                send("readyok");
+                break;
+            case "new":
+                stopSearch();
+                position.copy(new Position());
+                engine.clear();
+                break;
+            case "setoption":
+                setOption(fields);
+                break;
+            case "position":
+                stopSearch();
+                setPosition(fields);
+                break;
+            case "go":
+                stopSearch();
+                go(fields);
+                break;
+            case "stop":
+                stopSearch();
+                break;
+            case "ponderhit":
+                ponderHit();
+                break;
+            case "print":
+                send(position.toString());
+                break;
+            case "quit":
+                return false;
+            default:
+                throw new IllegalArgumentException("Unknown command: " + fields[0]);
+        }
+        return true;
+    }
+
+    /**
+     * Change search engine option (rebuilds engine)
+     * @param fields command fields: setoption name value
+     */
+    private void setOption(String[] fields){
+        if(fields.length != 3)
+            throw new IllegalArgumentException("Invalid option");
+        int value = parseNumber(fields[2]);
+        int threads = engine.getThreads();
+        int hashSize = engine.getHashSize();
+        switch(fields[1]){
+            case "threads": threads = Math.max(1, Math.min(value, SearchEngine.MAX_THREADS)); break;
+            case "hash":
+                if(value < 1 || value > MAX_HASH_SIZE)
+                    throw new IllegalArgumentException("Invalid hash size (1 to " + MAX_HASH_SIZE + " MB)");
+                hashSize = value;
+                break;
+            default: throw new IllegalArgumentException("Unknown option: " + fields[1]);
+        }
+        stopSearch();
+        // current engine is kept if new engine can't be created
+        SearchEngine created;
+        try {
+            created = new SearchEngine(threads, hashSize);
+        } catch (OutOfMemoryError ex){
+            throw new IllegalArgumentException("Not enough memory for hash size " + hashSize + " MB");
+        }
+        engine.shutdown();
+        engine = created;
+    }
+
+    /**
+     * Set current position
+     * @param fields command fields: position startpos|text ... [moves ...]
+     */
+    private void setPosition(String[] fields){
+        int index = 2;
+        Position result;
+        if(fields.length > 1 && fields[1].equals("startpos")){
+            result = new Position();
+        } else if(fields.length > 1 && fields[1].equals("text")){
+            StringBuilder text = new StringBuilder();
+            for(; index < fields.length && !fields[index].equals("moves"); index++)
+                text.append(fields[index]).append(' ');
+            result = Position.parse(text.toString());
+        } else {
+            throw new IllegalArgumentException("Invalid position command");
+        }
+        if(index < fields.length){
+            if(!fields[index].equals("moves"))
+                throw new IllegalArgumentException("Invalid position command");
+            for(index++; index < fields.length; index++){
+                result.makeMove(parseMove(result, fields[index]));
+                // clear undo stack
+                result.copy(result);
+            }
+        }
+        position.copy(result);
+    }
+
+    /**
+     * Start a search of current position
+     * @param fields command fields: go [limits]
+     */
+    private void go(String[] fields){
+        int depth = -1;
+        long moveTime = -1;
+        long time = -1, increment = 0;
+        int movesToGo = MOVES_TO_GO;
+        boolean ponder = false, wait = false;
+        boolean red = position.isRedTurn();
+        for(int i = 1; i < fields.length; i++){
+            switch(fields[i]){
+                case "infinite": wait = true; break;
+                case "ponder": ponder = true; break;
+                default:
+                    if(i + 1 >= fields.length)
+                        throw new IllegalArgumentException("Invalid go command");
+                    int value = parseNumber(fields[++i]);
+                    switch(fields[i - 1]){
+                        case "depth": depth = value; break;
+                        case "movetime": moveTime = value; break;
+                        case "rtime": if(red) time = value; break;
+                        case "btime": if(!red) time = value; break;
+                        case "rinc": if(red) increment = value; break;
+                        case "binc": if(!red) increment = value; break;
+                        case "movestogo": movesToGo = Math.max(1, value); break;
+                        default: throw new IllegalArgumentException("Invalid go command");
+                    }
+            }
+        }
+        // Without depth or time limits search is infinite
+        if(depth < 0 && moveTime < 0 && time < 0)
+            wait = true;
+        if(depth < 0)
+            depth = SearchEngine.MAX_DEPTH;
+        // Time budget: fixed move time, a part of remaining time or none
+        long budget = Long.MAX_VALUE / 2;
+        if(moveTime >= 0){
+            budget = moveTime;
+        } else if(time >= 0){
+            budget = Math.min(time / movesToGo + increment, time - TIME_MARGIN);
+            budget = Math.max(1, budget);
+        }
+        final Position root = new Position();
+        root.copy(position);
+        final int maxDepth = depth;
+        final long searchBudget = (ponder || wait)? Long.MAX_VALUE / 2 : budget;
+        synchronized(this){
+            pondering = ponder;
+            infinite = wait;
+            ponderBudget = budget;
+        }
+        token.reset();
+        final TimerTask info = new TimerTask(){
+            @Override
+            public void run(){
+                if(engine.isSearching()) sendInfo(false);
+            }
+        };
+        searcher = new Thread(new Runnable(){
+            @Override
+            public void run(){
+                int move = engine.think(root, maxDepth, searchBudget, token);
+                info.cancel();
+                sendInfo(true);
+                // infinite or ponder search: bestmove after stop or ponderhit
+                synchronized(TextEngine.this){
+                    while((pondering || infinite) && !token.isCancelled()){
+                        try {
+                            TextEngine.this.wait();
+                        } catch (InterruptedException ex){
+                            break;
+                        }
+                    }
+                }
+                send("bestmove " + ((move == Move.NONE)? "none" : formatMove(root, move)));
+            }
+        });
+        searcher.setName("TextEngine Search");
+        timer.schedule(info, INFO_INTERVAL, INFO_INTERVAL);
+        searcher.start();
+    }
+
+    /**
+     * Opponent played the pondered move: current search continues as a
+     * normal search, ends at its time budget from now
+     */
+    private synchronized void ponderHit(){
+        if(!pondering) return;
+        pondering = false;
+        if(!infinite && ponderBudget < Long.MAX_VALUE / 2)
+            token.setDeadline(System.currentTimeMillis() + ponderBudget);
+        notifyAll();
+    }
+
+    /**
+     * Stop current search and wait its bestmove answer
+     */
+    private void stopSearch(){
+        if(searcher == null) return;
+        synchronized(this){
+            token.cancel();
+            notifyAll();
+        }
+        joinSearch();
+    }
+
+    /**
+     * Wait current search end at its limits and its bestmove answer
+     * (infinite and ponder searches are stopped, they don't end alone)
+     */
+    private void finishSearch(){
+        if(searcher == null) return;
+        synchronized(this){
+            if(pondering || infinite) return;
+        }
+        joinSearch();
+    }
+
+    /**
+     * Wait search thread end
+     */
+    private void joinSearch(){
+        boolean interrupted = false;
+        while(true){
+            try {
+                searcher.join();
+                break;
+            } catch (InterruptedException ex){
+                interrupted = true;
+            }
+        }
+        if(interrupted)
+            Thread.currentThread().interrupt();
+        searcher = null;
+    }
+
+    /**
+     * Send search information line
+     * @param end search ended (adds score)
+     */
+    private void sendInfo(boolean end){
+        StringBuilder line = new StringBuilder("info depth ").append(engine.getDepth());
+        if(end)
+            line.append(" score ").append(engine.getScore());
+        line.append(" nodes ").append(engine.getNodes());
+        line.append(" nps ").append(engine.getNodesPerSecond());
+        line.append(" time ").append(engine.getTime());
+        send(line.toString());
+    }
+
+    /**
+     * Send an answer line
+     * @param line answer
+     */
+    private static void send(String line){
+        synchronized(System.out){
+            System.out.println(line);
+            System.out.flush();
+        }
+    }
+
+    /**
+     * Parse a legal move of a position
+     * @param position current position
+     * @param text move text (from-to or from x square x ... x to)
+     * @return move
+     * @throws IllegalArgumentException if text isn't a legal move
+     */
+    private static int parseMove(Position position, String text){
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = position.generateMoves(moves, 0);
+        for(int i = 0; i < count; i++){
+            if(formatMove(position, moves[i]).equals(text))
+                return moves[i];
+        }
+        throw new IllegalArgumentException("Illegal move: " + text);
+    }
+
+    /**
+     * Get move text
+     * @param position position before the move
+     * @param move legal move
+     * @return move text (from-to or from x square x ... x to)
+     */
+    private static String formatMove(Position position, int move){
+        if(!Move.isCapture(move))
+            return Move.from(move) + "-" + Move.to(move);
+        int[] squares = new int[Board.SQUARES];
+        int count = position.getPath(move, squares);
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < count; i++){
+            if(i > 0) text.append('x');
+            text.append(squares[i]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Parse a non negative number
+     * @param text number text
+     * @return number
+     * @throws IllegalArgumentException if text isn't a valid number
+     */
+    private static int parseNumber(String text){
+        try {
+            int value = Integer.parseInt(text);
+            if(value >= 0) return value;
+        } catch (NumberFormatException ex){
+            // invalid number
+        }
+        throw new IllegalArgumentException("Invalid number: " + text);
+    }
+}
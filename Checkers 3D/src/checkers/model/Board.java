@@ -6,14 +6,28 @@ import checkers.common.Point;
  * Class Board
  * Implements data structure for Checkers board
  * Define cells value, pieces and tiles
- * 
+ *
+ * Only the 32 dark squares can hold a piece, so the position
+ * is stored as three 32 bits words (one bit per dark square):
+ * red pieces, black pieces and queens (of any color).
+ * Empty squares are the dark squares without red or black pieces.
+ * Dark squares are numbered by rows: square = row * 4 + column / 2
+ *
  * @author Cristian Tardivo
  */
 public final class Board implements Cloneable {
 
-    public enum Cells {BLACK,BLACK_QUEEN,RED,RED_QUEEN,BLACK_FLOOR,WHITE_FLOOR}; 
-    private Cells[][] board;
-    
+    public enum Cells {BLACK,BLACK_QUEEN,RED,RED_QUEEN,BLACK_FLOOR,WHITE_FLOOR};
+    // Number of playable squares
+    public static final int SQUARES = 32;
+    // Initial pieces positions (rows 0..2 black, rows 5..7 red)
+    public static final int INITIAL_BLACK = 0x00000FFF;
+    public static final int INITIAL_RED = 0xFFF00000;
+    // Bitboards
+    private int red;
+    private int black;
+    private int queens;
+
     /**
      * Create a new standar board
      */
@@ -25,32 +39,146 @@ public final class Board implements Cloneable {
      * Restart Current Board
      */
     public void resetBoard(){
-        board = new Cells[][] {{Cells.WHITE_FLOOR,Cells.BLACK,Cells.WHITE_FLOOR,Cells.BLACK,Cells.WHITE_FLOOR,Cells.BLACK,Cells.WHITE_FLOOR,Cells.BLACK},
-                               {Cells.BLACK,Cells.WHITE_FLOOR,Cells.BLACK,Cells.WHITE_FLOOR,Cells.BLACK,Cells.WHITE_FLOOR,Cells.BLACK,Cells.WHITE_FLOOR},
-                               {Cells.WHITE_FLOOR,Cells.BLACK,Cells.WHITE_FLOOR,Cells.BLACK,Cells.WHITE_FLOOR,Cells.BLACK,Cells.WHITE_FLOOR,Cells.BLACK},
-                               {Cells.BLACK_FLOOR,Cells.WHITE_FLOOR,Cells.BLACK_FLOOR,Cells.WHITE_FLOOR,Cells.BLACK_FLOOR,Cells.WHITE_FLOOR,Cells.BLACK_FLOOR,Cells.WHITE_FLOOR},
-                               {Cells.WHITE_FLOOR,Cells.BLACK_FLOOR,Cells.WHITE_FLOOR,Cells.BLACK_FLOOR,Cells.WHITE_FLOOR,Cells.BLACK_FLOOR,Cells.WHITE_FLOOR,Cells.BLACK_FLOOR},
-                               {Cells.RED,Cells.WHITE_FLOOR,Cells.RED,Cells.WHITE_FLOOR,Cells.RED,Cells.WHITE_FLOOR,Cells.RED,Cells.WHITE_FLOOR},
-                               {Cells.WHITE_FLOOR,Cells.RED,Cells.WHITE_FLOOR,Cells.RED,Cells.WHITE_FLOOR,Cells.RED,Cells.WHITE_FLOOR,Cells.RED},
-                               {Cells.RED,Cells.WHITE_FLOOR,Cells.RED,Cells.WHITE_FLOOR,Cells.RED,Cells.WHITE_FLOOR,Cells.RED,Cells.WHITE_FLOOR}};
+        red = INITIAL_RED;
+        black = INITIAL_BLACK;
+        queens = 0;
     }
-    
+
     /**
      * Get Board Value at position
      * Point must be a valid position [0..7][0..7]
      */
     public Cells getBoardValue(Point pos){
-        return board[pos.getFirst()][pos.getSecond()];
+        int bit = mask(pos);
+        if(bit == 0) return Cells.WHITE_FLOOR;
+        if((red & bit) != 0) return (queens & bit) != 0 ? Cells.RED_QUEEN : Cells.RED;
+        if((black & bit) != 0) return (queens & bit) != 0 ? Cells.BLACK_QUEEN : Cells.BLACK;
+        return Cells.BLACK_FLOOR;
     }
-    
+
     /**
      * Set a value in board at position
      * Point must be a valid position [0..7][0..7]
+     * light squares (WHITE_FLOOR) can't hold values
      */
     public void setBoardValue(Point pos, Cells value){
-       board[pos.getFirst()][pos.getSecond()] = value;
+        int bit = mask(pos);
+        // clear square
+        red &= ~bit;
+        black &= ~bit;
+        queens &= ~bit;
+        // put new value
+        switch(value){
+            case RED_QUEEN: red |= bit; queens |= bit; break;
+            case RED: red |= bit; break;
+            case BLACK_QUEEN: black |= bit; queens |= bit; break;
+            case BLACK: black |= bit; break;
+            default: break;
+        }
+    }
+
+    /**
+     * Get red pieces bitboard (men and queens)
+     * @return bits of squares with red pieces
+     */
+    public int getRed(){
+        return red;
+    }
+
+    /**
+     * Get black pieces bitboard (men and queens)
+     * @return bits of squares with black pieces
+     */
+    public int getBlack(){
+        return black;
+    }
+
+    /**
+     * Get queens bitboard (red and black)
+     * @return bits of squares with queens
+     */
+    public int getQueens(){
+        return queens;
+    }
+
+    /**
+     * Get empty squares bitboard
+     * @return bits of dark squares without pieces
+     */
+    public int getEmpty(){
+        return ~(red | black);
+    }
+
+    /**
+     * Set all bitboards at once
+     * @param red red pieces bits
+     * @param black black pieces bits
+     * @param queens queens bits
+     */
+    public void setBitboards(int red, int black, int queens){
+        this.red = red;
+        this.black = black;
+        this.queens = queens;
+    }
+
+    /**
+     * Compute square number of a board position
+     * @param row board row [0..7]
+     * @param col board column [0..7]
+     * @return square [0..31] or -1 for light or out of board positions
+     */
+    public static int toSquare(int row, int col){
+        if(row < 0 || row > 7 || col < 0 || col > 7 || ((row + col) & 1) == 0) return -1;
+        return (row << 2) | (col >> 1);
     }
-    
+
+    /**
+     * Compute bit mask of a board position
+     * @param row board row
+     * @param col board column
+     * @return square bit or 0 for light or out of board positions
+     */
+    public static int mask(int row, int col){
+        int square = toSquare(row, col);
+        return (square < 0) ? 0 : 1 << square;
+    }
+
+    /**
+     * Compute bit mask of a board position
+     * @param pos board position
+     * @return square bit or 0 for light or out of board positions
+     */
+    public static int mask(Point pos){
+        return mask(pos.getFirst(), pos.getSecond());
+    }
+
+    /**
+     * Get bits of all squares in a row
+     * @param row board row [0..7]
+     * @return row mask
+     */
+    public static int rowMask(int row){
+        return 0xF << (row << 2);
+    }
+
+    /**
+     * Get board row of a square
+     * @param square square [0..31]
+     * @return row [0..7]
+     */
+    public static int row(int square){
+        return square >> 2;
+    }
+
+    /**
+     * Get board column of a square
+     * @param square square [0..31]
+     * @return column [0..7]
+     */
+    public static int col(int square){
+        return ((square & 3) << 1) | (((square >> 2) & 1) ^ 1);
+    }
+
     /**
      * Clone current board
      * @return cloned board
@@ -58,11 +186,9 @@ public final class Board implements Cloneable {
     @Override
     public Board clone(){
         Board res = new Board();
-        for(int i = 0; i < board.length; i++){
-            for(int j = 0; j < board[i].length; j++){
-                res.board[i][j] = this.board[i][j];
-            }            
-        }
+        res.red = this.red;
+        res.black = this.black;
+        res.queens = this.queens;
         return res;
     }
 }
@@ -13,9 +13,17 @@ import java.util.Observable;
  * Uses a Board and two players
  * Store information of current game
  * 
+ * Keeps the keys of the positions at the start of each turn played
+ * since the last eat or man move (those positions can't be repeated
+ * after it), used by draw rules: DRAW_REPETITIONS repetitions of a
+ * position or DRAW_TURNS turns without eats or men moves
+ * 
  * @author Cristian Tardivo
  */
 public class Model extends Observable {
+    // Draw rules
+    public static final int DRAW_TURNS = 80;
+    public static final int DRAW_REPETITIONS = 3;
     protected Board board;
     protected Player playerA;
     protected Player playerB;
@@ -30,6 +38,13 @@ public class Model extends Observable {
     protected int red_queen_count;
     protected int black_queen_count;
     protected Cronometer cronometer;
+    // Zobrist position key
+    protected long hashKey;
+    // Keys of turns start positions since last eat or man move (oldest first)
+    protected long[] history;
+    protected int historyCount;
+    // Current turn eats or moves a man
+    protected boolean irreversible;
     
     /**
      * Create a new Model
@@ -50,6 +65,9 @@ public class Model extends Observable {
         //
         board = new Board();
         cronometer = Cronometer.getInstance();
+        hashKey = computeHashKey();
+        history = new long[DRAW_TURNS + 1];
+        clearHistory();
     }
     
     /**
@@ -65,6 +83,10 @@ public class Model extends Observable {
         this.red_queen_count = model.red_queen_count;
         this.checkPiece = (model.checkPiece != null)? model.checkPiece.clone():null;
         this.board = model.board.clone();
+        this.hashKey = model.hashKey;
+        this.history = model.history.clone();
+        this.historyCount = model.historyCount;
+        this.irreversible = model.irreversible;
         this.playerA = model.playerA.clone();
         this.playerB = model.playerB.clone();
         // Checks for current player and rival player
@@ -81,6 +103,9 @@ public class Model extends Observable {
      * Start new Game
      */
     public void startGame(){
+        // players colors can change before start
+        hashKey = computeHashKey();
+        clearHistory();
         gameStarted = true;
         cronometer.start();
     }
@@ -112,6 +137,34 @@ public class Model extends Observable {
         //
         board.resetBoard();
         cronometer.reset();
+        hashKey = computeHashKey();
+        clearHistory();
+    }
+    
+    /**
+     * Set board position and player to move
+     * pieces counts and key are updated, observers aren't notified
+     * (used to analyze positions out of a game)
+     * @param red red pieces bits
+     * @param black black pieces bits
+     * @param queens queens bits
+     * @param redTurn red player moves
+     * @param check piece that must continue eating or null
+     */
+    public void setPosition(int red, int black, int queens, boolean redTurn, Point check){
+        board.setBitboards(red, black, queens);
+        red_count = Integer.bitCount(red & ~queens);
+        black_count = Integer.bitCount(black & ~queens);
+        red_queen_count = Integer.bitCount(red & queens);
+        black_queen_count = Integer.bitCount(black & queens);
+        if(currentPlayer.isRed() != redTurn){
+            Player aux = currentPlayer;
+            currentPlayer = rivalPlayer;
+            rivalPlayer = aux;
+        }
+        checkPiece = check;
+        hashKey = computeHashKey();
+        clearHistory();
     }
     
     /**
@@ -268,8 +321,14 @@ public class Model extends Observable {
      * @param value Value to put
      */
     public void setValueAt(Point pos,Cells value){
+        // Update position key
+        int square = Board.toSquare(pos.getFirst(), pos.getSecond());
+        hashKey ^= Zobrist.cell(board.getBoardValue(pos), square) ^ Zobrist.cell(value, square);
         // Change Value
         board.setBoardValue(pos,value);        
+        // Eats can't be undone
+        if(value == Cells.BLACK_FLOOR)
+            irreversible = true;
         // Notify Observers
         setChanged();
         // Eats a piece
@@ -288,6 +347,7 @@ public class Model extends Observable {
      * @param piece 
      */
     public void setCheckPiece(Point piece){
+        hashKey ^= Zobrist.check(toSquare(checkPiece)) ^ Zobrist.check(toSquare(piece));
         checkPiece = piece;
     }
 
@@ -300,6 +360,89 @@ public class Model extends Observable {
         return checkPiece;
     }
     
+    /**
+     * Get Zobrist key of current position
+     * pieces, side to move and chained eat piece
+     * @return position key
+     */
+    public long getHashKey(){
+        return hashKey;
+    }
+    
+    /**
+     * Compute Zobrist key of current position from scratch
+     * @return position key
+     */
+    protected long computeHashKey(){
+        return Zobrist.compute(board.getRed(), board.getBlack(), board.getQueens(),
+                               currentPlayer.isRed(), toSquare(checkPiece));
+    }
+    
+    /**
+     * Get number of turns played since last eat or man move
+     * @return turns
+     */
+    public int getReversibleTurns(){
+        return historyCount - 1;
+    }
+    
+    /**
+     * Get key of a previous turn start position
+     * @param turns turns before current turn [1..getReversibleTurns()]
+     * @return position key
+     */
+    public long getHistoryKey(int turns){
+        return history[historyCount - 1 - turns];
+    }
+    
+    /**
+     * Get number of previous repetitions of current turn start position
+     * (since last eat or man move)
+     * @return repetitions
+     */
+    public int getRepetitions(){
+        int repetitions = 0;
+        long current = history[historyCount - 1];
+        for(int i = historyCount - 3; i >= 0; i -= 2){
+            if(history[i] == current) repetitions++;
+        }
+        return repetitions;
+    }
+    
+    /**
+     * Start history in current position
+     */
+    private void clearHistory(){
+        history[0] = hashKey;
+        historyCount = 1;
+        irreversible = false;
+    }
+    
+    /**
+     * Add current position to history at turn change
+     * (history is cleared by eats and men moves)
+     */
+    private void addHistory(){
+        if(irreversible){
+            historyCount = 0;
+            irreversible = false;
+        } else if(historyCount == history.length){
+            // longer histories are a draw, keep last turns
+            System.arraycopy(history, 1, history, 0, historyCount - 1);
+            historyCount--;
+        }
+        history[historyCount++] = hashKey;
+    }
+    
+    /**
+     * Get board square of a position
+     * @param pos board position or null
+     * @return square or -1
+     */
+    private static int toSquare(Point pos){
+        return (pos == null)? -1 : Board.toSquare(pos.getFirst(), pos.getSecond());
+    }
+    
     /**
      * Swap values between to points in the board
      * allows "move" piece in board
@@ -307,6 +450,15 @@ public class Model extends Observable {
      * @param dest Destiny Position
      */
     public void swapValues(Point orig,Point dest){
+        // Update position key
+        int origSquare = Board.toSquare(orig.getFirst(), orig.getSecond());
+        int destSquare = Board.toSquare(dest.getFirst(), dest.getSecond());
+        hashKey ^= Zobrist.cell(board.getBoardValue(orig), origSquare) ^ Zobrist.cell(board.getBoardValue(dest), destSquare)
+                 ^ Zobrist.cell(board.getBoardValue(orig), destSquare) ^ Zobrist.cell(board.getBoardValue(dest), origSquare);
+        // Men moves can't be undone
+        Cells moved = board.getBoardValue(orig);
+        if(moved == Cells.RED || moved == Cells.BLACK)
+            irreversible = true;
         // Swap Values
         Cells aux = board.getBoardValue(dest);
         board.setBoardValue(dest,board.getBoardValue(orig));
@@ -328,6 +480,8 @@ public class Model extends Observable {
         Player aux = currentPlayer;
         currentPlayer = rivalPlayer;
         rivalPlayer = aux;
+        hashKey ^= Zobrist.BLACK_TURN;
+        addHistory();
         // Notify Observer turn has changed
         setChanged();
         notifyObservers("MODEL_CHANGE_TURN");
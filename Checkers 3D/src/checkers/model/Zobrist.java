@@ -0,0 +1,128 @@
+package checkers.model;
+
+import checkers.model.Board.Cells;
+
+/**
+ * Class Zobrist
+ * Implements Zobrist keys for game positions
+ * a position key is the xor of one random key for each piece
+ * in its square, side to move key (black turn) and chained eat
+ * piece key, so it can be updated incrementally with each change
+ * Keys are generated from a fixed seed, the same position has
+ * the same key in every run
+ *
+ * @author Cristian Tardivo
+ */
+public final class Zobrist {
+    // Piece kinds
+    public static final int RED = 0;
+    public static final int RED_QUEEN = 1;
+    public static final int BLACK = 2;
+    public static final int BLACK_QUEEN = 3;
+    // Black player turn key
+    public static final long BLACK_TURN;
+    // Piece keys [kind][square]
+    private static final long[][] PIECES = new long[4][Board.SQUARES];
+    // Chained eat piece keys [square]
+    private static final long[] CHECK = new long[Board.SQUARES];
+
+    static {
+        long seed = 0x3D4A8F1C72B6E095L;
+        for(int kind = 0; kind < 4; kind++){
+            for(int sq = 0; sq < Board.SQUARES; sq++){
+                seed += 0x9E3779B97F4A7C15L;
+                PIECES[kind][sq] = mix(seed);
+            }
+        }
+        for(int sq = 0; sq < Board.SQUARES; sq++){
+            seed += 0x9E3779B97F4A7C15L;
+            CHECK[sq] = mix(seed);
+        }
+        seed += 0x9E3779B97F4A7C15L;
+        BLACK_TURN = mix(seed);
+    }
+
+    // No instances
+    private Zobrist(){}
+
+    /**
+     * SplitMix64 output function
+     * @param z seed value
+     * @return random long
+     */
+    private static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Get key of a piece in a square
+     * @param kind piece kind (RED, RED_QUEEN, BLACK, BLACK_QUEEN)
+     * @param square square [0..31]
+     * @return piece key
+     */
+    public static long piece(int kind, int square){
+        return PIECES[kind][square];
+    }
+
+    /**
+     * Get key of a piece in a square
+     * @param red red piece
+     * @param queen queen piece
+     * @param square square [0..31]
+     * @return piece key
+     */
+    public static long piece(boolean red, boolean queen, int square){
+        return PIECES[(red ? RED : BLACK) + (queen ? 1 : 0)][square];
+    }
+
+    /**
+     * Get key of a board cell value in a square
+     * @param cell cell value
+     * @param square square [0..31] or -1 (light square)
+     * @return cell key (0 for empty or light squares)
+     */
+    public static long cell(Cells cell, int square){
+        if(square < 0) return 0;
+        switch(cell){
+            case RED: return PIECES[RED][square];
+            case RED_QUEEN: return PIECES[RED_QUEEN][square];
+            case BLACK: return PIECES[BLACK][square];
+            case BLACK_QUEEN: return PIECES[BLACK_QUEEN][square];
+            default: return 0;
+        }
+    }
+
+    /**
+     * Get key of chained eat piece square
+     * @param square square [0..31] or -1 (none)
+     * @return check key (0 for none)
+     */
+    public static long check(int square){
+        return (square < 0) ? 0 : CHECK[square];
+    }
+
+    /**
+     * Compute full position key
+     * @param red red pieces bits
+     * @param black black pieces bits
+     * @param queens queens bits
+     * @param redTurn red moves
+     * @param checkSquare chained eat piece square or -1
+     * @return position key
+     */
+    public static long compute(int red, int black, int queens, boolean redTurn, int checkSquare){
+        long key = 0;
+        for(int bits = red; bits != 0; bits &= bits - 1){
+            int sq = Integer.numberOfTrailingZeros(bits);
+            key ^= PIECES[(queens & (1 << sq)) != 0 ? RED_QUEEN : RED][sq];
+        }
+        for(int bits = black; bits != 0; bits &= bits - 1){
+            int sq = Integer.numberOfTrailingZeros(bits);
+            key ^= PIECES[(queens & (1 << sq)) != 0 ? BLACK_QUEEN : BLACK][sq];
+        }
+        if(!redTurn) key ^= BLACK_TURN;
+        return key ^ check(checkSquare);
+    }
+}
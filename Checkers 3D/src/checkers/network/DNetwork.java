@@ -13,6 +13,7 @@ import com.jme3.network.serializing.Serializer;
 import checkers.common.Point;
 import checkers.common.Settings;
 import java.io.IOException;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.logging.Level;
@@ -197,13 +198,17 @@ public class DNetwork extends Observable implements Runnable{
     }
     
     /**
-     * Send move message through network
-     * @param orig Move origin point
-     * @param dest Move destination point
+     * Send move message through network, a whole turn
+     * @param path move origin point and each step destination point
      */
-    public void sendMove(Point orig, Point dest){
-        int[] data = {orig.getFirst(),orig.getSecond(),dest.getFirst(),dest.getSecond()};
-        sendData("REMOTE_MOVE",data);
+    public void sendPath(List<Point> path){
+        int[] data = new int[path.size() * 2];
+        int i = 0;
+        for(Point point : path){
+            data[i++] = point.getFirst();
+            data[i++] = point.getSecond();
+        }
+        sendData("REMOTE_PATH",data);
     }
     
     /**
@@ -0,0 +1,297 @@
+package checkers.tools;
+
+import checkers.common.Pair;
+import checkers.common.Point;
+import checkers.ia.MoveGenerator;
+import checkers.ia.Position;
+import checkers.ia.SearchEngine;
+import checkers.ia.iaModel;
+import checkers.ia.iaRules;
+import checkers.logic.Logic;
+import checkers.model.Board;
+import checkers.model.Model;
+import checkers.model.Player.Color;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class Benchmark
+ * Measures engine hot paths in isolation over a fixed corpus of
+ * opening, middlegame and endgame positions: rules (Logic), ia models
+ * (iaRules, iaModel), search position (Position) and full searches
+ * at each difficult level depth
+ * Each operation runs a warmup time and then a measure time over all
+ * corpus positions of a phase, and reports time per operation,
+ * operations per second and allocated bytes per operation
+ * (thread allocated bytes, n/a if JVM doesn't support it)
+ *
+ * usage: Benchmark [measure ms] [warmup ms] [operation filter]
+ *
+ * @author Cristian Tardivo
+ */
+public class Benchmark {
+    // Positions corpus (see Position.parse)
+    private static final String[][] CORPUS = {
+        {"opening",
+         "bbbbbbbbbbbb........rrrrrrrrrrrr r -",
+         "bbbb.b.b.b.b.b......rr..rr.rrrrr r -",
+         "bbbbb.bb...b..bb...rrr..rrrrr.rr r -",
+         "bbbbbb.b...bb.b...r.rr..rrrrr.rr r -"},
+        {"middlegame",
+         "bb.b..bb......bb....rr...r.rrr.r r -",
+         ".b.b...b...bR.b..r.b.r....rrr.rr r -",
+         "...b..bb...brb....r......r..r.rr b -",
+         "...bbb.b..bb.r..r.r....brr.rrr.. r -"},
+        {"endgame",
+         ".R.b......bb.....r...b.......rB. r -",
+         "R.................b.....R....rBB r -",
+         "...R.....r...r.......b....r..... r -",
+         ".R...r.........b....b.......rBB. r -"}
+    };
+    // Search depth of each difficult level (hard is time limited in game)
+    private static final String[] LEVELS = {"easy", "moderate", "hard"};
+    private static final int[] LEVEL_DEPTHS = {3, 6, 10};
+    // Search table size (MB), cleared before each search
+    private static final int HASH_SIZE = 16;
+    // Min operations between fast operations time checks
+    private static final int BATCH = 1024;
+    // Results sink, avoids removing unused results
+    private static volatile long sink;
+    // Bytes allocated by allocatedBytes itself
+    private static long allocationOverhead;
+
+    public static void main(String[] args){
+        long measure = (args.length > 0)? Long.parseLong(args[0]) : 2000;
+        long warmup = (args.length > 1)? Long.parseLong(args[1]) : 1000;
+        String filter = (args.length > 2)? args[2] : "";
+        allocationOverhead = Long.MAX_VALUE;
+        for(int i = 0; i < 100; i++)
+            allocationOverhead = Math.min(allocationOverhead, -allocatedBytes() + allocatedBytes());
+        System.out.println(String.format("%-11s %-24s %10s %14s %14s %12s",
+                           "phase", "operation", "ops", "ns/op", "ops/s", "B/op"));
+        for(String[] phase : CORPUS){
+            for(Operation op : operations(phase)){
+                if(op.name.contains(filter))
+                    measure(phase[0], op, warmup, measure);
+            }
+        }
+    }
+
+    /**
+     * Create operations over corpus positions of a phase
+     * @param phase phase name and positions
+     * @return operations
+     */
+    private static List<Operation> operations(String[] phase){
+        final int size = phase.length - 1;
+        final Position[] positions = new Position[size];
+        final Logic[] logics = new Logic[size];
+        final iaModel[] models = new iaModel[size];
+        final List<Logic> checkLogics = new ArrayList<>();
+        final List<Pair<Point,Point>> checkMoves = new ArrayList<>();
+        for(int i = 0; i < size; i++){
+            positions[i] = Position.parse(phase[i + 1]);
+            Model model = new Model();
+            int check = positions[i].getCheckSquare();
+            model.setPosition(positions[i].getRed(), positions[i].getBlack(), positions[i].getQueens(),
+                              positions[i].isRedTurn(),
+                              (check < 0)? null : new Point(Board.row(check), Board.col(check)));
+            logics[i] = new Logic(model);
+            models[i] = new iaModel(model);
+            // Validation requests: one and two squares diagonals of every piece
+            int pieces = positions[i].getRed() | positions[i].getBlack();
+            for(; pieces != 0; pieces &= pieces - 1){
+                int square = Integer.numberOfTrailingZeros(pieces);
+                Point orig = new Point(Board.row(square), Board.col(square));
+                for(int d = 1; d <= 2; d++){
+                    for(int r = -d; r <= d; r += 2 * d){
+                        for(int c = -d; c <= d; c += 2 * d){
+                            checkLogics.add(logics[i]);
+                            checkMoves.add(new Pair<>(orig, new Point(orig.getFirst() + r, orig.getSecond() + c)));
+                        }
+                    }
+                }
+            }
+        }
+        final iaRules rules = new iaRules();
+        final int[] moves = new int[MoveGenerator.MAX_MOVES];
+        List<Operation> result = new ArrayList<>();
+        result.add(new Operation("Logic.isValidMove", checkMoves.size()){
+            @Override
+            long run(int index){
+                Pair<Point,Point> move = checkMoves.get(index);
+                return checkLogics.get(index).isValidMove(move.getFirst(), move.getSecond())? 1 : 0;
+            }
+        });
+        result.add(new Operation("Logic.getPieces", size){
+            @Override
+            long run(int index){
+                Color color = positions[index].isRedTurn()? Color.red : Color.black;
+                return logics[index].getPieces(color).size();
+            }
+        });
+        result.add(new Operation("iaRules.applyRules", size){
+            @Override
+            long run(int index){
+                return rules.applyRules(models[index]).size();
+            }
+        });
+        result.add(new Operation("iaModel.clone", size){
+            @Override
+            long run(int index){
+                return models[index].clone().getHashKey();
+            }
+        });
+        result.add(new Operation("iaModel.evaluate", size){
+            @Override
+            long run(int index){
+                return models[index].evaluate();
+            }
+        });
+        result.add(new Operation("Position.generateMoves", size){
+            @Override
+            long run(int index){
+                return positions[index].generateMoves(moves, 0);
+            }
+        });
+        result.add(new Operation("Position.makeMove", size){
+            @Override
+            long run(int index){
+                Position position = positions[index];
+                int count = position.generateMoves(moves, 0);
+                long key = 0;
+                for(int i = 0; i < count; i++){
+                    position.makeMove(moves[i]);
+                    key ^= position.getKey();
+                    position.unmakeMove();
+                }
+                return key;
+            }
+        });
+        for(int level = 0; level < LEVELS.length; level++){
+            final int depth = LEVEL_DEPTHS[level];
+            final SearchEngine engine = new SearchEngine(1, HASH_SIZE);
+            result.add(new Operation("search " + LEVELS[level] + " (" + depth + ")", size){
+                @Override
+                boolean hasSetup(){
+                    return true;
+                }
+
+                @Override
+                void setup(int index){
+                    engine.clear();
+                    engine.setSeed(index);
+                }
+
+                @Override
+                long run(int index){
+                    return engine.think(positions[index], depth, Long.MAX_VALUE / 2);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Measure an operation and print results
+     * @param phase corpus phase name
+     * @param op operation
+     * @param warmup warmup time (ms)
+     * @param time measure time (ms)
+     */
+    private static void measure(String phase, Operation op, long warmup, long time){
+        run(op, warmup * 1000000);
+        long[] result = run(op, time * 1000000);
+        long ops = result[0];
+        double nanos = (double)result[1] / ops;
+        String bytes = (result[2] < 0)? "n/a" : String.format("%.1f", (double)result[2] / ops);
+        System.out.println(String.format("%-11s %-24s %10d %14.1f %14.0f %12s",
+                           phase, op.name, ops, nanos, 1e9 / nanos, bytes));
+    }
+
+    /**
+     * Run an operation over all its inputs until time end
+     * operations with setup are timed one by one (setup not included),
+     * other operations are timed in batches
+     * @param op operation
+     * @param time run time (ns)
+     * @return operations, time (ns) and allocated bytes (-1 unknown)
+     */
+    private static long[] run(Operation op, long time){
+        long ops = 0;
+        long elapsed = 0;
+        long bytes = 0;
+        long start = System.nanoTime();
+        do {
+            if(op.hasSetup()){
+                for(int i = 0; i < op.size; i++){
+                    op.setup(i);
+                    long allocated = allocatedBytes();
+                    long opStart = System.nanoTime();
+                    sink += op.run(i);
+                    elapsed += System.nanoTime() - opStart;
+                    bytes += Math.max(0, allocatedBytes() - allocated - allocationOverhead);
+                }
+                ops += op.size;
+            } else {
+                int repeat = Math.max(1, BATCH / op.size);
+                long allocated = allocatedBytes();
+                long opStart = System.nanoTime();
+                for(int r = 0; r < repeat; r++){
+                    for(int i = 0; i < op.size; i++)
+                        sink += op.run(i);
+                }
+                elapsed += System.nanoTime() - opStart;
+                bytes += Math.max(0, allocatedBytes() - allocated - allocationOverhead);
+                ops += repeat * op.size;
+            }
+        } while(System.nanoTime() - start < time);
+        return new long[]{ops, elapsed, (allocatedBytes() < 0)? -1 : bytes};
+    }
+
+    /**
+     * Get bytes allocated by current thread
+     * @return allocated bytes or -1 if not supported
+     */
+    private static long allocatedBytes(){
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+
+    /**
+     * Benchmark operation over a set of inputs
+     */
+    private abstract static class Operation {
+        final String name;
+        final int size;
+
+        Operation(String name, int size){
+            this.name = name;
+            this.size = size;
+        }
+
+        /**
+         * Prepare an operation run (not measured)
+         * @param index input number
+         */
+        void setup(int index){}
+
+        /**
+         * Operations with setup
+         * @return has setup
+         */
+        boolean hasSetup(){
+            return false;
+        }
+
+        /**
+         * Run operation once
+         * @param index input number
+         * @return any result value
+         */
+        abstract long run(int index);
+    }
+}
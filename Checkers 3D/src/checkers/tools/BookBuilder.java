@@ -0,0 +1,193 @@
+package checkers.tools;
+
+import checkers.ia.OpeningBook;
+import checkers.ia.Position;
+import checkers.ia.SearchEngine;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class BookBuilder
+ * Builds an opening book (see OpeningBook) from AI self-play games
+ * without game view, one game at a time in each thread
+ * Book plies of each game are played with a random search depth (from
+ * depth - 2 to depth) and a random seed, so games follow different
+ * sound openings, then the game is played at full depth until its end
+ * or MAX_PLIES plies (draws by game rules end games, see Position.isDraw)
+ * Each book ply move is weighted by results of its player in games
+ * that played it (win 2, draw 1, loss 0 points); moves played in less
+ * than MIN_GAMES games or without points are left out
+ * Games and book are the same for any number of threads
+ *
+ * usage: BookBuilder [games] [plies] [depth] [threads] [file]
+ *
+ * @author Cristian Tardivo
+ */
+public class BookBuilder {
+    // Draw limit
+    private static final int MAX_PLIES = 400;
+    // Min games of a book move
+    private static final int MIN_GAMES = 2;
+    // Search table size of each thread (MB)
+    private static final int HASH_SIZE = 8;
+    // Limits
+    private final int games;
+    private final int plies;
+    private final int depth;
+    // Next game to play
+    private final AtomicInteger nextGame = new AtomicInteger();
+    // Played games and moves stats: key -> move -> {games, points}
+    private int played;
+    private final Map<Long, Map<Integer, int[]>> stats = new HashMap<>();
+
+    /**
+     * Create a new book builder
+     * @param games number of games
+     * @param plies book plies from initial position
+     * @param depth search depth
+     */
+    public BookBuilder(int games, int plies, int depth){
+        this.games = games;
+        this.plies = Math.min(plies, MAX_PLIES);
+        this.depth = Math.max(3, Math.min(depth, SearchEngine.MAX_DEPTH));
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int games = (args.length > 0)? Integer.parseInt(args[0]) : 2000;
+        int plies = (args.length > 1)? Integer.parseInt(args[1]) : 12;
+        int depth = (args.length > 2)? Integer.parseInt(args[2]) : 8;
+        int threads = (args.length > 3)? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        File file = new File((args.length > 4)? args[4] : OpeningBook.FILE_NAME);
+        BookBuilder builder = new BookBuilder(games, plies, depth);
+        System.out.println("Book " + file + ": " + games + " games, " + plies + " plies, depth "
+                           + builder.depth + ", " + threads + " threads");
+        long start = System.currentTimeMillis();
+        builder.run(threads);
+        List<OpeningBook.Entry> entries = builder.getEntries();
+        try {
+            OpeningBook.write(file, builder.plies, entries);
+        } catch (IOException ex){
+            System.err.println("BookBuilder: can't write book " + ex.getMessage());
+            return;
+        }
+        System.out.println("Book entries: " + entries.size() + " (" + builder.stats.size() + " positions played)");
+        System.out.println("Time: " + (System.currentTimeMillis() - start) / 1000 + " s");
+    }
+
+    /**
+     * Play book games
+     * @param threads number of game threads
+     * @throws InterruptedException if interrupted waiting game threads
+     */
+    public void run(int threads) throws InterruptedException {
+        Thread[] players = new Thread[Math.max(1, threads)];
+        for(int i = 0; i < players.length; i++){
+            players[i] = new Thread(new GameRunner());
+            players[i].setName("BookBuilder " + i);
+            players[i].start();
+        }
+        for(Thread player : players)
+            player.join();
+    }
+
+    /**
+     * Save a game book moves
+     * @param keys book plies positions keys
+     * @param moves book plies moves
+     * @param red book plies player (red or black)
+     * @param count book plies played
+     * @param result game result: 1 red wins, 0 draw, -1 black wins
+     */
+    private synchronized void record(long[] keys, int[] moves, boolean[] red, int count, int result){
+        for(int i = 0; i < count; i++){
+            Map<Integer, int[]> positionMoves = stats.get(keys[i]);
+            if(positionMoves == null){
+                positionMoves = new HashMap<>();
+                stats.put(keys[i], positionMoves);
+            }
+            int[] moveStats = positionMoves.get(moves[i]);
+            if(moveStats == null){
+                moveStats = new int[2];
+                positionMoves.put(moves[i], moveStats);
+            }
+            moveStats[0]++;
+            moveStats[1] += red[i]? result + 1 : 1 - result;
+        }
+        if(++played % 100 == 0)
+            System.out.println("Games " + played + ", positions " + stats.size());
+    }
+
+    /**
+     * Get book entries of played games
+     * @return book entries (not sorted)
+     */
+    public synchronized List<OpeningBook.Entry> getEntries(){
+        List<OpeningBook.Entry> entries = new ArrayList<>();
+        for(Map.Entry<Long, Map<Integer, int[]>> position : stats.entrySet()){
+            for(Map.Entry<Integer, int[]> move : position.getValue().entrySet()){
+                int[] moveStats = move.getValue();
+                if(moveStats[0] >= MIN_GAMES && moveStats[1] > 0)
+                    entries.add(new OpeningBook.Entry(position.getKey(), move.getKey(), moveStats[1]));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Game thread, plays games with its own engine
+     */
+    private class GameRunner implements Runnable {
+        private final SearchEngine engine = new SearchEngine(1, HASH_SIZE);
+        private final Position game = new Position();
+        private final long[] keys = new long[plies];
+        private final int[] moves = new int[plies];
+        private final boolean[] red = new boolean[plies];
+
+        @Override
+        public void run(){
+            int index;
+            while((index = nextGame.getAndIncrement()) < games)
+                play(index);
+            engine.shutdown();
+        }
+
+        /**
+         * Play a game and record its book plies
+         * @param index game number (random seed)
+         */
+        private void play(int index){
+            Random random = new Random(index);
+            engine.clear();
+            engine.setSeed(index);
+            game.copy(new Position());
+            int result = 0;
+            int count = 0;
+            for(int ply = 0; ply < MAX_PLIES; ply++){
+                if(!game.hasMoves()){
+                    result = game.isRedTurn()? -1 : 1;
+                    break;
+                }
+                if(game.isDraw()) break;
+                boolean book = ply < plies;
+                int searchDepth = book? depth - random.nextInt(3) : depth;
+                int move = engine.think(game, searchDepth, Long.MAX_VALUE / 2);
+                if(book){
+                    keys[count] = game.getKey();
+                    moves[count] = move;
+                    red[count] = game.isRedTurn();
+                    count++;
+                }
+                game.makeMove(move);
+                // clear undo stack (moves are kept in history)
+                game.copy(game);
+            }
+            record(keys, moves, red, count, result);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package checkers.tools;
+
+import checkers.ia.EndgameDatabase;
+import checkers.ia.EndgameIndex;
+import checkers.ia.MoveGenerator;
+import checkers.ia.Position;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class EndgameGenerator
+ * Solves every position with up to max pieces (win, loss or draw and
+ * distance to game end, see EndgameIndex) following game rules, and
+ * writes one database file for each material slice
+ * Slices are solved from fewer pieces to more pieces and from fewer
+ * men to more men, so eats and new queens always lead to solved slices
+ * Each slice is solved by retrograde passes of growing distance:
+ * pass 0 marks positions without moves as losses in 0, pass n marks
+ * positions with a move to a loss in n - 1 as wins in n, and positions
+ * whose moves all lead to wins (the longest in n - 1) as losses in n;
+ * positions not marked when passes end are draws
+ * A turn is one move (capture moves are whole chained eats)
+ * Positions of each pass are shared between threads in chunks
+ *
+ * Files are written in EndgameDatabase compressed format
+ *
+ * usage: EndgameGenerator [max pieces] [threads] [directory]
+ *
+ * @author Cristian Tardivo
+ */
+public class EndgameGenerator {
+    // Indexes of each pass work chunk (multiple of 64)
+    private static final int CHUNK = 1 << 14;
+    // Limits
+    private final int maxPieces;
+    private final int threads;
+    private final File directory;
+    // Solved slices values: slice -> values [red to move, black to move]
+    private final Map<Integer, byte[][]> solved = new HashMap<>();
+    // Max distance of solved slices
+    private int maxDistance;
+
+    /**
+     * Create a new endgame generator
+     * @param maxPieces max pieces of positions
+     * @param threads number of threads
+     * @param directory database files directory
+     */
+    public EndgameGenerator(int maxPieces, int threads, File directory){
+        this.maxPieces = maxPieces;
+        this.threads = Math.max(1, threads);
+        this.directory = directory;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int pieces = (args.length > 0)? Integer.parseInt(args[0]) : 4;
+        int threads = (args.length > 1)? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        File directory = new File((args.length > 2)? args[2] : EndgameDatabase.DIRECTORY);
+        if(pieces < 2 || pieces > 9){
+            System.err.println("EndgameGenerator: pieces must be 2 to 9");
+            return;
+        }
+        if(!directory.isDirectory() && !directory.mkdirs()){
+            System.err.println("EndgameGenerator: can't create directory " + directory);
+            return;
+        }
+        System.out.println("Endgame database " + directory + ": up to " + pieces + " pieces, " + threads + " threads");
+        long start = System.currentTimeMillis();
+        try {
+            new EndgameGenerator(pieces, threads, directory).run();
+        } catch (IOException ex){
+            System.err.println("EndgameGenerator: can't write database " + ex.getMessage());
+            return;
+        } catch (IllegalStateException ex){
+            System.err.println("EndgameGenerator: " + ex.getMessage());
+            return;
+        }
+        System.out.println("Time: " + (System.currentTimeMillis() - start) / 1000 + " s");
+    }
+
+    /**
+     * Solve and write all slices
+     * @throws IOException if a file can't be written
+     * @throws InterruptedException if interrupted waiting threads
+     * @throws IllegalStateException if a slice can't be solved (distance or size)
+     */
+    public void run() throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for(int pieces = 2; pieces <= maxPieces; pieces++){
+                for(int men = 0; men <= pieces; men++){
+                    for(int rm = 0; rm <= men; rm++){
+                        int bm = men - rm;
+                        for(int rq = 0; rq <= pieces - men; rq++){
+                            int bq = pieces - men - rq;
+                            if(rm + rq > 0 && bm + bq > 0 && EndgameIndex.size(rm, rq, bm, bq) > 0)
+                                solve(pool, rm, rq, bm, bq);
+                        }
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Solve a slice and write its file
+     * @param pool pass threads
+     * @param rm red men
+     * @param rq red queens
+     * @param bm black men
+     * @param bq black queens
+     * @throws IOException if file can't be written
+     * @throws InterruptedException if interrupted waiting threads
+     */
+    private void solve(ExecutorService pool, int rm, int rq, int bm, int bq) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        int slice = EndgameIndex.slice(rm, rq, bm, bq);
+        long size = EndgameIndex.size(rm, rq, bm, bq);
+        if(size > Integer.MAX_VALUE)
+            throw new IllegalStateException("slice " + EndgameIndex.name(slice) + " too big");
+        Slice current = new Slice(slice, rm, rq, bm, bq, (int)size);
+        int limit = maxDistance + 1;
+        for(int pass = 0; ; pass++){
+            if(pass > EndgameIndex.MAX_DISTANCE)
+                throw new IllegalStateException("slice " + EndgameIndex.name(slice) + " distance too long");
+            current.pass = pass;
+            current.nextChunk.set(0);
+            List<Future<Integer>> results = new ArrayList<>();
+            for(int i = 0; i < threads; i++)
+                results.add(pool.submit(new PassWorker(current)));
+            int changes = 0;
+            try {
+                for(Future<Integer> result : results)
+                    changes += result.get();
+            } catch (ExecutionException ex){
+                throw new IllegalStateException("slice " + EndgameIndex.name(slice) + " failed " + ex.getCause());
+            }
+            if(changes > 0) limit = Math.max(limit, pass + 1);
+            if(changes == 0 && pass >= limit) break;
+        }
+        solved.put(slice, current.values);
+        // Stats and file
+        long wins = 0, losses = 0, draws = 0;
+        int sliceDistance = 0;
+        for(int side = 0; side < 2; side++){
+            for(int index = 0; index < current.size; index++){
+                byte value = current.values[side][index];
+                if(EndgameIndex.isWin(value)) wins++;
+                else if(EndgameIndex.isLoss(value)) losses++;
+                else if(current.isValid(side, index)) draws++;
+                if(value != EndgameIndex.DRAW)
+                    sliceDistance = Math.max(sliceDistance, EndgameIndex.distance(value));
+            }
+        }
+        maxDistance = Math.max(maxDistance, sliceDistance);
+        write(current);
+        System.out.println(String.format("%s: %12d positions  wins %12d  losses %12d  draws %12d  max distance %3d  %6.1f s",
+                           EndgameIndex.name(slice), wins + losses + draws, wins, losses, draws, sliceDistance,
+                           (System.currentTimeMillis() - start) / 1000.0));
+    }
+
+    /**
+     * Write a slice file
+     * @param slice solved slice
+     * @throws IOException if file can't be written
+     */
+    private void write(Slice slice) throws IOException {
+        File file = new File(directory, EndgameIndex.name(slice.slice) + ".edb");
+        EndgameDatabase.write(file, slice.rm, slice.rq, slice.bm, slice.bq, slice.values);
+    }
+
+    /**
+     * Slice being solved: values and pending positions of each side
+     * (pending bits of a chunk are only changed by its thread)
+     */
+    private static class Slice {
+        final int slice;
+        final int rm, rq, bm, bq;
+        final int size;
+        final byte[][] values;
+        final long[][] pending;
+        final long[][] invalid;
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final int chunks;
+        volatile int pass;
+
+        Slice(int slice, int rm, int rq, int bm, int bq, int size){
+            this.slice = slice;
+            this.rm = rm;
+            this.rq = rq;
+            this.bm = bm;
+            this.bq = bq;
+            this.size = size;
+            values = new byte[2][size];
+            pending = new long[2][(size + 63) >>> 6];
+            invalid = new long[2][(size + 63) >>> 6];
+            chunks = (size + CHUNK - 1) / CHUNK;
+        }
+
+        boolean isPending(int side, int index){
+            return (pending[side][index >>> 6] & (1L << index)) != 0;
+        }
+
+        boolean isValid(int side, int index){
+            return (invalid[side][index >>> 6] & (1L << index)) == 0;
+        }
+    }
+
+    /**
+     * Pass thread task: takes chunks of both sides until all are done
+     */
+    private class PassWorker implements Callable<Integer> {
+        private final Slice slice;
+        private final Position position = new Position();
+        private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+        private final int[] bits = new int[3];
+        // Successors summary of current position
+        private boolean hasMoves;
+        private boolean allWins;
+        private int minLoss;
+        private int maxWin;
+
+        PassWorker(Slice slice){
+            this.slice = slice;
+        }
+
+        @Override
+        public Integer call(){
+            int changes = 0;
+            int chunk;
+            while((chunk = slice.nextChunk.getAndIncrement()) < 2 * slice.chunks){
+                int side = chunk & 1;
+                int first = (chunk >>> 1) * CHUNK;
+                int last = Math.min(first + CHUNK, slice.size);
+                for(int index = first; index < last; index++)
+                    changes += (slice.pass == 0)? prepare(side, index) : solve(side, index);
+            }
+            return changes;
+        }
+
+        /**
+         * Pass 0: mark invalid indexes, losses without moves and pending positions
+         * @param side player to move (0 red, 1 black)
+         * @param index position index
+         * @return 1 if position was solved, else 0
+         */
+        private int prepare(int side, int index){
+            if(!EndgameIndex.position(index, slice.rm, slice.rq, slice.bm, slice.bq, bits)){
+                slice.invalid[side][index >>> 6] |= 1L << index;
+                return 0;
+            }
+            position.set(bits[0], bits[1], bits[2], side == 0, -1);
+            if(!position.hasMoves()){
+                slice.values[side][index] = EndgameIndex.loss(0);
+                return 1;
+            }
+            slice.pending[side][index >>> 6] |= 1L << index;
+            return 0;
+        }
+
+        /**
+         * Pass n: solve a pending position if its distance is n
+         * @param side player to move (0 red, 1 black)
+         * @param index position index
+         * @return 1 if position was solved, else 0
+         */
+        private int solve(int side, int index){
+            if(!slice.isPending(side, index)) return 0;
+            EndgameIndex.position(index, slice.rm, slice.rq, slice.bm, slice.bq, bits);
+            boolean red = side == 0;
+            position.set(bits[0], bits[1], bits[2], red, -1);
+            hasMoves = false;
+            allWins = true;
+            minLoss = Integer.MAX_VALUE;
+            maxWin = -1;
+            successors();
+            int pass = slice.pass;
+            byte value;
+            if(minLoss == pass - 1) value = EndgameIndex.win(pass);
+            else if(hasMoves && allWins && maxWin == pass - 1) value = EndgameIndex.loss(pass);
+            else return 0;
+            slice.values[side][index] = value;
+            slice.pending[side][index >>> 6] &= ~(1L << index);
+            return 1;
+        }
+
+        /**
+         * Summarize values of positions after each move (turn)
+         */
+        private void successors(){
+            int count = position.generateMoves(moves, 0);
+            for(int i = 0; i < count; i++){
+                position.makeMove(moves[i]);
+                hasMoves = true;
+                byte value = value();
+                if(EndgameIndex.isLoss(value)){
+                    allWins = false;
+                    minLoss = Math.min(minLoss, EndgameIndex.distance(value));
+                } else if(EndgameIndex.isWin(value)){
+                    maxWin = Math.max(maxWin, EndgameIndex.distance(value));
+                } else {
+                    allWins = false;
+                }
+                position.unmakeMove();
+            }
+        }
+
+        /**
+         * Get value of current position for player to move
+         * (current slice value may be pending)
+         * @return position value
+         */
+        private byte value(){
+            int red = position.getRed(), black = position.getBlack(), queens = position.getQueens();
+            boolean redTurn = position.isRedTurn();
+            if((redTurn? red : black) == 0) return EndgameIndex.loss(0);
+            int number = EndgameIndex.slice(red, black, queens);
+            byte[][] values = (number == slice.slice)? slice.values : solved.get(number);
+            return values[redTurn? 0 : 1][(int)EndgameIndex.index(red, black, queens)];
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package checkers.tools;
+
+import checkers.ia.Move;
+import checkers.ia.MoveGenerator;
+import checkers.ia.Position;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class Perft
+ * Counts leaf nodes of the legal moves tree to a fixed depth
+ * from any position, following game rules (obligatory eats,
+ * chained eats with the same piece, queens move one square and
+ * eat jumping two, a new queen ends the chained eat)
+ * Each turn is one ply (a chained eat is one move, paths with the
+ * same origin, end and eaten pieces are counted once)
+ * Prints nodes of each root move, total nodes and nodes per second,
+ * root moves are shared between threads
+ * Used to check move generation after any rules change:
+ * initial position counts are 7, 49, 302, 1469, 7361, 36768,
+ * 179740, 845931, 3963680 (depth 1 to 9)
+ * With assertions enabled (java -ea) every generated move is made,
+ * last ply too, so Position checks its incremental evaluation
+ * against a full evaluation at each node
+ *
+ * usage: Perft [depth] [threads] [position (see Position.parse)]
+ *
+ * @author Cristian Tardivo
+ */
+public class Perft {
+    // Make last ply moves (assertions enabled) instead of counting them
+    private static final boolean CHECK = Perft.class.desiredAssertionStatus();
+
+    public static void main(String[] args) throws InterruptedException {
+        int depth = (args.length > 0)? Integer.parseInt(args[0]) : 8;
+        if(depth >= Position.MAX_PLY){
+            System.err.println("Perft: max depth " + (Position.MAX_PLY - 1));
+            return;
+        }
+        int threads = (args.length > 1)? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Position root = new Position();
+        if(args.length > 2){
+            StringBuilder text = new StringBuilder();
+            for(int i = 2; i < args.length; i++) text.append(args[i]).append(' ');
+            root = Position.parse(text.toString());
+        }
+        System.out.println("Perft " + root + " depth " + depth + ", " + threads + " threads");
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = root.generateMoves(moves, 0);
+        if(depth < 1 || count == 0){
+            System.out.println("Nodes: " + ((depth < 1)? 1 : 0));
+            return;
+        }
+        // Search each root move in its own task
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        List<Future<Long>> results = new ArrayList<>();
+        for(int i = 0; i < count; i++)
+            results.add(pool.submit(new RootMove(root, moves[i], depth - 1)));
+        long total = 0;
+        try {
+            for(int i = 0; i < count; i++){
+                long nodes = results.get(i).get();
+                total += nodes;
+                System.out.println(Move.toString(moves[i]) + ": " + nodes);
+            }
+        } catch (ExecutionException ex){
+            System.err.println("Perft failed " + ex.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        long time = Math.max(1, (System.nanoTime() - start) / 1000000);
+        System.out.println("Nodes: " + total);
+        System.out.println("Time: " + time + " ms");
+        System.out.println("NPS: " + (total * 1000 / time));
+    }
+
+    /**
+     * Count leaf nodes from a position
+     * @param position position (restored at end)
+     * @param moves moves buffer, MAX_MOVES moves for each ply
+     * @param depth remaining depth
+     * @return leaf nodes
+     */
+    public static long perft(Position position, int[] moves, int depth){
+        int offset = position.getPly() * MoveGenerator.MAX_MOVES;
+        int count = position.generateMoves(moves, offset);
+        if(depth <= 0) return 1;
+        if(depth == 1 && !CHECK) return count;
+        long nodes = 0;
+        for(int i = offset; i < offset + count; i++){
+            position.makeMove(moves[i]);
+            nodes += perft(position, moves, depth - 1);
+            position.unmakeMove();
+        }
+        return nodes;
+    }
+
+    /**
+     * Root move count task, uses its own position and buffer
+     */
+    private static class RootMove implements Callable<Long> {
+        private final Position position = new Position();
+        private final int move;
+        private final int depth;
+
+        RootMove(Position root, int move, int depth){
+            position.copy(root);
+            this.move = move;
+            this.depth = depth;
+        }
+
+        @Override
+        public Long call(){
+            int[] moves = new int[Position.MAX_PLY * MoveGenerator.MAX_MOVES];
+            position.makeMove(move);
+            return perft(position, moves, depth);
+        }
+    }
+}
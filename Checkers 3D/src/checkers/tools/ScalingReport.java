@@ -0,0 +1,101 @@
+package checkers.tools;
+
+import checkers.ia.MoveGenerator;
+import checkers.ia.Position;
+import checkers.ia.SearchEngine;
+import java.util.Random;
+
+/**
+ * Class ScalingReport
+ * Prints IA search threads scaling report:
+ * time to reach a fixed depth and nodes per second with 1 to N
+ * search threads, over a fixed set of positions
+ * Positions are searched with each thread count before timing
+ * (JIT warm-up), each thread count uses one engine, cleared before
+ * each position and shut down after its row
+ * Used to choose search threads (Settings) for each machine
+ *
+ * usage: ScalingReport [max threads] [depth] [hash MB]
+ *
+ * @author Cristian Tardivo
+ */
+public class ScalingReport {
+    // Positions plies from initial position
+    private static final int[] PLIES = {6, 10, 14, 18, 22, 26};
+    // Max time for each search (ms)
+    private static final long MAX_TIME = 3600000;
+
+    public static void main(String[] args){
+        int maxThreads = (args.length > 0)? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int depth = (args.length > 1)? Integer.parseInt(args[1]) : 14;
+        int hashSize = (args.length > 2)? Integer.parseInt(args[2]) : 64;
+        Position[] positions = createPositions();
+        System.out.println("Search scaling: depth " + depth + ", hash " + hashSize + " MB, "
+                           + positions.length + " positions, "
+                           + Runtime.getRuntime().availableProcessors() + " processors");
+        System.out.println(String.format("%8s %12s %8s %14s %10s %8s",
+                           "threads", "time (ms)", "speedup", "nodes", "knps", "scaling"));
+        // warm-up: compile search code before first timed row
+        for(int threads = 1; threads <= maxThreads; threads++)
+            search(positions, threads, hashSize, depth);
+        double baseTime = 0;
+        double baseNps = 0;
+        for(int threads = 1; threads <= maxThreads; threads++){
+            long[] result = search(positions, threads, hashSize, depth);
+            long time = result[0];
+            long nodes = result[1];
+            double nps = (time == 0)? 0 : nodes * 1000.0 / time;
+            if(threads == 1){
+                baseTime = time;
+                baseNps = nps;
+            }
+            System.out.println(String.format("%8d %12d %8.2f %14d %10.0f %8.2f",
+                               threads, time, (time == 0)? 0 : baseTime / time,
+                               nodes, nps / 1000, (baseNps == 0)? 0 : nps / baseNps));
+        }
+    }
+
+    /**
+     * Search all positions with one engine (cleared before each position)
+     * @param positions positions to search
+     * @param threads search threads
+     * @param hashSize table size (MB)
+     * @param depth search depth
+     * @return search time (ms) and nodes
+     */
+    private static long[] search(Position[] positions, int threads, int hashSize, int depth){
+        long[] result = new long[2];
+        SearchEngine engine = new SearchEngine(threads, hashSize);
+        for(Position position : positions){
+            engine.clear();
+            engine.setSeed(1);
+            engine.think(position, depth, MAX_TIME);
+            result[0] += engine.getTime();
+            result[1] += engine.getNodes();
+        }
+        engine.shutdown();
+        return result;
+    }
+
+    /**
+     * Create report positions playing seeded random moves
+     * from initial position
+     * @return positions
+     */
+    private static Position[] createPositions(){
+        Position[] positions = new Position[PLIES.length];
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        for(int i = 0; i < PLIES.length; i++){
+            Random random = new Random(i);
+            Position position = new Position();
+            for(int ply = 0; ply < PLIES[i]; ply++){
+                int count = position.generateMoves(moves, 0);
+                if(count == 0) break;
+                position.makeMove(moves[random.nextInt(count)]);
+            }
+            positions[i] = new Position();
+            positions[i].copy(position);
+        }
+        return positions;
+    }
+}
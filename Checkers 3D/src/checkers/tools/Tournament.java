@@ -0,0 +1,340 @@
+package checkers.tools;
+
+import checkers.ia.Evaluation;
+import checkers.ia.MoveGenerator;
+import checkers.ia.Position;
+import checkers.ia.SearchEngine;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class Tournament
+ * Plays AI vs AI games between two engine configurations (A and B)
+ * without game view, one game at a time in each thread
+ * Games start from balanced opening positions (all positions after
+ * OPENING_PLIES plies with a small search score; their count depends
+ * on search and default evaluation, and is printed at start), each
+ * opening is played twice with colors swapped
+ * A game is a draw by game rules (see Position.isDraw) or after
+ * MAX_PLIES plies
+ * Reports A score, Elo difference and SPRT log likelihood ratio of
+ * elo1 against elo0, stops when SPRT accepts one of them or at max games
+ *
+ * Engine configuration: comma separated key=value pairs
+ *   depth (max depth), time (ms per move), hash (table MB),
+ *   man, queen, row (evaluation weights, see Evaluation)
+ *   example: depth=8,time=100,queen=220
+ *
+ * usage: Tournament engineA engineB [max games] [threads] [elo0] [elo1]
+ *
+ * @author Cristian Tardivo
+ */
+public class Tournament {
+    // Opening positions plies from initial position
+    private static final int OPENING_PLIES = 3;
+    // Opening positions search depth and max absolute score
+    private static final int OPENING_DEPTH = 8;
+    private static final int OPENING_SCORE = 40;
+    // Draw limit
+    private static final int MAX_PLIES = 400;
+    // SPRT errors
+    private static final double ALPHA = 0.05;
+    private static final double BETA = 0.05;
+    // Engines configuration
+    private final Config configA;
+    private final Config configB;
+    // Opening positions
+    private final List<Position> openings;
+    // Limits
+    private final int maxGames;
+    private final double elo0;
+    private final double elo1;
+    // Next game pair to play
+    private final AtomicInteger nextPair = new AtomicInteger();
+    // Results of A
+    private int wins;
+    private int draws;
+    private int losses;
+    private volatile boolean finished;
+
+    /**
+     * Create a new tournament
+     * @param configA engine A configuration
+     * @param configB engine B configuration
+     * @param maxGames max number of games
+     * @param elo0 SPRT null hypothesis Elo
+     * @param elo1 SPRT alternative hypothesis Elo
+     */
+    public Tournament(Config configA, Config configB, int maxGames, double elo0, double elo1){
+        this.configA = configA;
+        this.configB = configB;
+        this.maxGames = maxGames;
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        openings = createOpenings();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if(args.length < 2){
+            System.err.println("usage: Tournament engineA engineB [max games] [threads] [elo0] [elo1]");
+            return;
+        }
+        Config a = Config.parse(args[0]);
+        Config b = Config.parse(args[1]);
+        int games = (args.length > 2)? Integer.parseInt(args[2]) : 1000;
+        int threads = (args.length > 3)? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        double elo0 = (args.length > 4)? Double.parseDouble(args[4]) : 0;
+        double elo1 = (args.length > 5)? Double.parseDouble(args[5]) : 10;
+        Tournament tournament = new Tournament(a, b, games, elo0, elo1);
+        System.out.println("A: " + a + "  B: " + b);
+        System.out.println(tournament.openings.size() + " openings, " + games + " games max, "
+                           + threads + " threads, SPRT elo0 " + elo0 + " elo1 " + elo1);
+        tournament.run(threads);
+    }
+
+    /**
+     * Play tournament games
+     * @param threads number of game threads
+     * @throws InterruptedException if interrupted waiting game threads
+     */
+    public void run(int threads) throws InterruptedException {
+        Thread[] players = new Thread[Math.max(1, threads)];
+        for(int i = 0; i < players.length; i++){
+            players[i] = new Thread(new GameRunner());
+            players[i].setName("Tournament " + i);
+            players[i].start();
+        }
+        for(Thread player : players)
+            player.join();
+        synchronized(this){
+            System.out.println("Final: " + report());
+        }
+    }
+
+    /**
+     * Create balanced opening positions
+     * @return opening positions
+     */
+    private static List<Position> createOpenings(){
+        List<Position> candidates = new ArrayList<>();
+        expand(new Position(), OPENING_PLIES, candidates);
+        List<Position> result = new ArrayList<>();
+        SearchEngine engine = new SearchEngine(1, 16);
+        for(Position position : candidates){
+            engine.clear();
+            engine.think(position, OPENING_DEPTH, Long.MAX_VALUE / 2);
+            if(Math.abs(engine.getScore()) <= OPENING_SCORE)
+                result.add(position);
+        }
+        return result;
+    }
+
+    /**
+     * Add all positions after some plies
+     * @param position current position
+     * @param plies remaining plies
+     * @param result positions found
+     */
+    private static void expand(Position position, int plies, List<Position> result){
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = position.generateMoves(moves, 0);
+        if(plies == 0 || count == 0){
+            Position copy = new Position();
+            copy.copy(position);
+            if(count > 0) result.add(copy);
+            return;
+        }
+        for(int i = 0; i < count; i++){
+            position.makeMove(moves[i]);
+            expand(position, plies - 1, result);
+            position.unmakeMove();
+        }
+    }
+
+    /**
+     * Save a game result, prints report and checks SPRT
+     * @param result A result: 1 win, 0 draw, -1 loss
+     */
+    private synchronized void record(int result){
+        if(finished) return;
+        if(result > 0) wins++; else if(result < 0) losses++; else draws++;
+        int games = wins + draws + losses;
+        double llr = llr();
+        if(llr >= Math.log((1 - BETA) / ALPHA)){
+            System.out.println("SPRT: H1 accepted (elo1 " + elo1 + ")");
+            finished = true;
+        } else if(llr <= Math.log(BETA / (1 - ALPHA))){
+            System.out.println("SPRT: H0 accepted (elo0 " + elo0 + ")");
+            finished = true;
+        } else if(games >= maxGames){
+            finished = true;
+        }
+        if(finished || games % 20 == 0)
+            System.out.println(report());
+    }
+
+    /**
+     * Get results report
+     * @return report line
+     */
+    private String report(){
+        int games = wins + draws + losses;
+        double score = score();
+        double margin = 1.96 * Math.sqrt(variance() / Math.max(1, games));
+        return String.format("Games %d: +%d =%d -%d  score %.1f%%  Elo %+.1f [%+.1f, %+.1f]  LLR %.2f [%.2f, %.2f]",
+                             games, wins, draws, losses, 100 * score,
+                             elo(score), elo(score - margin), elo(score + margin),
+                             llr(), Math.log(BETA / (1 - ALPHA)), Math.log((1 - BETA) / ALPHA));
+    }
+
+    /**
+     * Get A mean score
+     * @return score [0..1]
+     */
+    private double score(){
+        int games = wins + draws + losses;
+        return (games == 0)? 0.5 : (wins + 0.5 * draws) / games;
+    }
+
+    /**
+     * Get variance of one game score
+     * @return variance
+     */
+    private double variance(){
+        int games = wins + draws + losses;
+        if(games == 0) return 0;
+        double s = score();
+        return (wins * (1 - s) * (1 - s) + draws * (0.5 - s) * (0.5 - s) + losses * s * s) / games;
+    }
+
+    /**
+     * Get SPRT log likelihood ratio (normal approximation)
+     * @return log likelihood ratio
+     */
+    private double llr(){
+        int games = wins + draws + losses;
+        double variance = variance();
+        if(variance <= 0) return 0;
+        double s0 = expectedScore(elo0);
+        double s1 = expectedScore(elo1);
+        return (s1 - s0) * (2 * score() - s0 - s1) * games / (2 * variance);
+    }
+
+    /**
+     * Get expected score of an Elo difference
+     * @param elo Elo difference
+     * @return score [0..1]
+     */
+    private static double expectedScore(double elo){
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /**
+     * Get Elo difference of a score
+     * @param score mean score
+     * @return Elo difference
+     */
+    private static double elo(double score){
+        score = Math.min(Math.max(score, 1e-4), 1 - 1e-4);
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    /**
+     * Game thread, plays game pairs with its own engines
+     */
+    private class GameRunner implements Runnable {
+        private final SearchEngine engineA = new SearchEngine(1, configA.hash);
+        private final SearchEngine engineB = new SearchEngine(1, configB.hash);
+        private final Position game = new Position();
+
+        GameRunner(){
+            engineA.setEvaluation(configA.evaluation);
+            engineB.setEvaluation(configB.evaluation);
+        }
+
+        @Override
+        public void run(){
+            while(!finished){
+                int pair = nextPair.getAndIncrement();
+                if(pair * 2 >= maxGames) return;
+                Position opening = openings.get(pair % openings.size());
+                record(play(opening, true, pair));
+                if(!finished) record(play(opening, false, pair));
+            }
+        }
+
+        /**
+         * Play a game
+         * @param opening start position
+         * @param aRed engine A plays red
+         * @param seed engines random seed
+         * @return A result: 1 win, 0 draw, -1 loss
+         */
+        private int play(Position opening, boolean aRed, long seed){
+            engineA.clear();
+            engineB.clear();
+            engineA.setSeed(seed);
+            engineB.setSeed(seed);
+            game.copy(opening);
+            for(int plies = 0; plies < MAX_PLIES; plies++){
+                if(!game.hasMoves())
+                    return (game.isRedTurn() == aRed)? -1 : 1;
+                if(game.isDraw())
+                    return 0;
+                boolean aMoves = game.isRedTurn() == aRed;
+                Config config = aMoves? configA : configB;
+                int move = (aMoves? engineA : engineB).think(game, config.depth, config.time);
+                game.makeMove(move);
+                // clear undo stack (moves are kept in history)
+                game.copy(game);
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Engine configuration
+     */
+    public static class Config {
+        int depth = 8;
+        long time = 100;
+        int hash = 8;
+        Evaluation evaluation = Evaluation.DEFAULT;
+
+        /**
+         * Parse a configuration: comma separated key=value pairs
+         * @param text configuration text
+         * @return configuration
+         * @throws IllegalArgumentException if text isn't a valid configuration
+         */
+        public static Config parse(String text){
+            Config config = new Config();
+            int man = Evaluation.DEFAULT.getMan();
+            int queen = Evaluation.DEFAULT.getQueen();
+            int row = Evaluation.DEFAULT.getRow();
+            for(String pair : text.split(",")){
+                String[] fields = pair.split("=");
+                if(fields.length != 2)
+                    throw new IllegalArgumentException("Invalid engine configuration: " + text);
+                int value = Integer.parseInt(fields[1].trim());
+                switch(fields[0].trim()){
+                    case "depth": config.depth = value; break;
+                    case "time": config.time = value; break;
+                    case "hash": config.hash = value; break;
+                    case "man": man = value; break;
+                    case "queen": queen = value; break;
+                    case "row": row = value; break;
+                    default: throw new IllegalArgumentException("Invalid engine configuration: " + text);
+                }
+            }
+            config.evaluation = new Evaluation(man, queen, row);
+            return config;
+        }
+
+        @Override
+        public String toString(){
+            return "depth=" + depth + ",time=" + time + ",hash=" + hash + "," + evaluation;
+        }
+    }
+}